@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks full request executions against a {@link LoopbackServer}. */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ExecuteBenchmark {
+    private HttpClient client;
+    private HttpClient clientWithDefaultHeaders;
+    private HttpGet get;
+
+    @Setup
+    public void setup(LoopbackServer server) {
+        ConnectionPoolSettings poolSettings = new ConnectionPoolSettings();
+        poolSettings.setMaxPerRoute(16);
+
+        client = new HttpClient(false, poolSettings);
+
+        clientWithDefaultHeaders = new HttpClient(false, poolSettings);
+        clientWithDefaultHeaders.addDefaultHeader("User-Agent", "benchmark");
+        clientWithDefaultHeaders.addDefaultHeader("Accept", "application/json");
+
+        get = new HttpGet(server.getBaseUri() + "/items");
+        get.addHeader("X-Request-Id", "42");
+    }
+
+    private static void close(HttpClient client) {
+        try {
+            client.close();
+        } catch (IOException ignored) {
+            // client not used by the running benchmark
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        close(client);
+        close(clientWithDefaultHeaders);
+    }
+
+    /** Reads the whole content, so the connection goes back to the pool. */
+    private static int consume(HttpResponse response) throws IOException {
+        byte[] buffer = new byte[4096];
+        int total = 0;
+
+        try (InputStream in = response.getContentInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+            }
+        } finally {
+            response.close();
+        }
+
+        return total;
+    }
+
+    @Benchmark
+    public int execute() throws IOException {
+        return consume(get.execute(client));
+    }
+
+    @Benchmark
+    public int executeWithDefaultHeaders() throws IOException {
+        return consume(get.execute(clientWithDefaultHeaders));
+    }
+
+    @Benchmark
+    public HttpResponse.StringResponse stringResponse() throws IOException {
+        return HttpResponse.getStringResponse(client, get, "utf-8", -1);
+    }
+}
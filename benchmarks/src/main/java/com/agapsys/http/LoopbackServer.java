@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Embedded HTTP server bound to the loopback interface. */
+@State(Scope.Benchmark)
+public class LoopbackServer {
+    /** Body returned by the server (about 1 KB). */
+    static final byte[] BODY;
+
+    static {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 1024) {
+            sb.append("{\"id\":").append(sb.length()).append(",\"name\":\"item\"},");
+        }
+        BODY = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        // Avoids Nagle/delayed ACK stalls on keep-alive connections
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+                exchange.getResponseHeaders().add("Set-Cookie", "session=abc123; Path=/; HttpOnly");
+                exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+                exchange.sendResponseHeaders(200, BODY.length);
+
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(BODY);
+                }
+            }
+        });
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the base URI of this server.
+     * @return the base URI of this server (e.g. "http://127.0.0.1:12345").
+     */
+    public String getBaseUri() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+}
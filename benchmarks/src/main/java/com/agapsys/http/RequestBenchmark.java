@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks request building (no network I/O). */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBenchmark {
+    private HttpClient client;
+    private HttpGet get;
+    private FormUrlEncodedRequest form;
+
+    @Setup
+    public void setup() {
+        client = new HttpClient();
+        client.addDefaultHeader("User-Agent", "benchmark");
+        client.addDefaultHeader("Accept", "application/json");
+        client.addDefaultHeader("X-Tenant", "tenant-1");
+
+        get = new HttpGet("http://localhost/items/%s?page=%d", "some item", 3);
+        get.addHeader("X-Request-Id", "42");
+        get.addHeader("Authorization", "Bearer token");
+
+        form = new FormUrlEncodedRequest.FormUrlEncodedPost("utf-8", "http://localhost/form");
+        for (int i = 0; i < 10; i++) {
+            form.addParameter("field" + i, "value with spaces & symbols " + i);
+        }
+    }
+
+    @Benchmark
+    public HttpGet constructWithUriParams() {
+        return new HttpGet("http://localhost/users/%s/items/%s?page=%d", "john doe", "a/b", 7);
+    }
+
+    @Benchmark
+    public HttpRequestBase mergeDefaultHeaders() {
+        return get.createWireRequest(client.getDefaultHeaders());
+    }
+
+    @Benchmark
+    public HttpEntity formEntity() {
+        return form.getEntity();
+    }
+}
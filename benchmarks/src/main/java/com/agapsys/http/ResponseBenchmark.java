@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.Header;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks header and cookie access on a response.
+ * A new response is created on each invocation, so lazily built structures are included in measurements.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseBenchmark {
+    private static final Header[] HEADERS = new Header[] {
+        new BasicHeader("Date", "Sat, 13 May 2017 10:00:00 GMT"),
+        new BasicHeader("Server", "benchmark"),
+        new BasicHeader("Content-Type", "application/json; charset=utf-8"),
+        new BasicHeader("Content-Length", "1024"),
+        new BasicHeader("Cache-Control", "max-age=60"),
+        new BasicHeader("ETag", "\"abc123\""),
+        new BasicHeader("Vary", "Accept-Encoding"),
+        new BasicHeader("Set-Cookie", "session=abc123; Path=/; HttpOnly"),
+        new BasicHeader("Set-Cookie", "theme=dark; Path=/; Max-Age=3600"),
+        new BasicHeader("X-Request-Id", "42"),
+        new BasicHeader("X-Trace", "a"),
+        new BasicHeader("X-Trace", "b")
+    };
+
+    private static HttpResponse newResponse() {
+        return new HttpResponse(new BasicCloseableResponse(
+            new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+            HEADERS,
+            new ByteArrayEntity(LoopbackServer.BODY)
+        ));
+    }
+
+    @Benchmark
+    public List<HttpHeader> getHeaders() {
+        return newResponse().getHeaders();
+    }
+
+    @Benchmark
+    public HttpHeader getFirstHeader() {
+        return newResponse().getFirstHeader("ETag");
+    }
+
+    @Benchmark
+    public int getHeadersByName() {
+        HttpResponse response = newResponse();
+        return response.getHeaders("X-Trace").size() + response.getHeaders("Cache-Control").size() + response.getHeaders("Missing").size();
+    }
+
+    @Benchmark
+    public HttpCookie getCookie() {
+        return newResponse().getCookie("session");
+    }
+}
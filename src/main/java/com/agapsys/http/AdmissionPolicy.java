@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+/**
+ * Admission policy used by a {@link HttpClient}.
+ * Requests to each host are admitted up to an adaptive concurrency limit (AIMD): while the limit is in use, it grows
+ * by one after as many successful responses as the limit, and it shrinks multiplicatively when a response is slower
+ * than the tolerated multiple of the host baseline latency, or when a request fails (I/O error or 5xx status). After a number of
+ * consecutive failures the circuit of the host opens and its requests are rejected for a period, after which a single
+ * probe is admitted: if it succeeds the circuit closes, otherwise it opens again.
+ * Rejected requests fail immediately with a {@link RejectedRequestException} instead of waiting for a connection.
+ * Settings are read when the policy is passed to a client; changing an instance already passed to a client has no
+ * effect on it.
+ */
+public class AdmissionPolicy {
+    public static final int    DEFAULT_INITIAL_LIMIT     = 20;
+    public static final int    DEFAULT_MIN_LIMIT         = 1;
+    public static final int    DEFAULT_MAX_LIMIT         = 200;
+    public static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+    public static final double DEFAULT_BACKOFF_RATIO     = 0.9;
+    public static final int    DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long   DEFAULT_OPEN_DURATION     = 5000;
+
+    private int    initialLimit     = DEFAULT_INITIAL_LIMIT;
+    private int    minLimit         = DEFAULT_MIN_LIMIT;
+    private int    maxLimit         = DEFAULT_MAX_LIMIT;
+    private double latencyTolerance = DEFAULT_LATENCY_TOLERANCE;
+    private double backoffRatio     = DEFAULT_BACKOFF_RATIO;
+    private int    failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private long   openDuration     = DEFAULT_OPEN_DURATION;
+
+    public AdmissionPolicy() {}
+
+    /**
+     * Copy constructor.
+     * @param other instance to be copied
+     */
+    public AdmissionPolicy(AdmissionPolicy other) {
+        if (other == null)
+            throw new IllegalArgumentException("Null policy");
+
+        this.initialLimit     = other.initialLimit;
+        this.minLimit         = other.minLimit;
+        this.maxLimit         = other.maxLimit;
+        this.latencyTolerance = other.latencyTolerance;
+        this.backoffRatio     = other.backoffRatio;
+        this.failureThreshold = other.failureThreshold;
+        this.openDuration     = other.openDuration;
+    }
+
+    /**
+     * Returns the concurrency limit of a host before any response is observed.
+     * @return the initial concurrency limit.
+     */
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    /**
+     * Sets the concurrency limit of a host before any response is observed.
+     * Value is clamped into [{@linkplain #getMinLimit() min limit}, {@linkplain #getMaxLimit() max limit}] when used.
+     * @param initialLimit initial concurrency limit.
+     */
+    public void setInitialLimit(int initialLimit) {
+        if (initialLimit < 1)
+            throw new IllegalArgumentException("Invalid initial limit: " + initialLimit);
+
+        this.initialLimit = initialLimit;
+    }
+
+    /**
+     * Returns the lowest concurrency limit of a host.
+     * @return the lowest concurrency limit.
+     */
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    /**
+     * Sets the lowest concurrency limit of a host.
+     * @param minLimit lowest concurrency limit.
+     */
+    public void setMinLimit(int minLimit) {
+        if (minLimit < 1)
+            throw new IllegalArgumentException("Invalid min limit: " + minLimit);
+
+        this.minLimit = minLimit;
+    }
+
+    /**
+     * Returns the highest concurrency limit of a host.
+     * @return the highest concurrency limit.
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Sets the highest concurrency limit of a host.
+     * @param maxLimit highest concurrency limit.
+     */
+    public void setMaxLimit(int maxLimit) {
+        if (maxLimit < 1)
+            throw new IllegalArgumentException("Invalid max limit: " + maxLimit);
+
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Returns the multiple of the baseline latency of a host above which a response reduces its concurrency limit.
+     * @return the tolerated latency multiple.
+     */
+    public double getLatencyTolerance() {
+        return latencyTolerance;
+    }
+
+    /**
+     * Sets the multiple of the baseline latency of a host above which a response reduces its concurrency limit.
+     * Baseline is the lowest latency observed in the last window of responses.
+     * @param latencyTolerance tolerated latency multiple (at least 1).
+     */
+    public void setLatencyTolerance(double latencyTolerance) {
+        if (!(latencyTolerance >= 1))
+            throw new IllegalArgumentException("Invalid latency tolerance: " + latencyTolerance);
+
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * Returns the factor applied to the concurrency limit of a host when it is reduced.
+     * @return the backoff ratio.
+     */
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    /**
+     * Sets the factor applied to the concurrency limit of a host when it is reduced.
+     * @param backoffRatio backoff ratio (greater than 0 and lower than 1).
+     */
+    public void setBackoffRatio(double backoffRatio) {
+        if (!(backoffRatio > 0 && backoffRatio < 1))
+            throw new IllegalArgumentException("Invalid backoff ratio: " + backoffRatio);
+
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * Returns the number of consecutive failures which opens the circuit of a host.
+     * @return the number of consecutive failures which opens a circuit.
+     */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * Sets the number of consecutive failures (I/O errors or 5xx responses) which opens the circuit of a host.
+     * @param failureThreshold number of consecutive failures.
+     */
+    public void setFailureThreshold(int failureThreshold) {
+        if (failureThreshold < 1)
+            throw new IllegalArgumentException("Invalid failure threshold: " + failureThreshold);
+
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Returns the time (in milliseconds) a circuit stays open before a probe request is admitted.
+     * @return the time a circuit stays open.
+     */
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * Sets the time a circuit stays open before a probe request is admitted.
+     * @param openDuration time in milliseconds.
+     */
+    public void setOpenDuration(long openDuration) {
+        if (openDuration < 0)
+            throw new IllegalArgumentException("Invalid open duration: " + openDuration);
+
+        this.openDuration = openDuration;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+
+/** Future of an asynchronous execution which wraps the response produced by the async client. */
+final class AsyncResponseFuture extends BasicFuture<HttpResponse> {
+    private final boolean decompress;
+    private volatile Future<?> delegate = null;
+
+    /**
+     * Constructor.
+     * @param callback callback to be notified on completion (may be null)
+     * @param decompress true to decompress gzip/deflate encoded responses.
+     */
+    AsyncResponseFuture(FutureCallback<HttpResponse> callback, boolean decompress) {
+        super(callback);
+        this.decompress = decompress;
+    }
+
+    /**
+     * Returns the callback to be passed to the async client.
+     * @return the callback to be passed to the async client.
+     */
+    FutureCallback<org.apache.http.HttpResponse> getWrappedCallback() {
+        return new FutureCallback<org.apache.http.HttpResponse>() {
+            @Override
+            public void completed(org.apache.http.HttpResponse result) {
+                if (decompress)
+                    DecompressingEntity.decompress(result);
+
+                HttpResponse response = new HttpResponse(new BasicCloseableResponse(result));
+
+                if (!AsyncResponseFuture.this.completed(response)) {
+                    try {
+                        response.close();
+                    } catch (IOException ignored) {}
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                AsyncResponseFuture.this.failed(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                AsyncResponseFuture.this.cancel();
+            }
+        };
+    }
+
+    /**
+     * Sets the future returned by the async client.
+     * @param delegate future returned by the async client.
+     */
+    void setDelegate(Future<?> delegate) {
+        this.delegate = delegate;
+
+        if (isCancelled())
+            delegate.cancel(true);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        Future<?> d = delegate;
+
+        if (cancelled && d != null)
+            d.cancel(true);
+
+        return cancelled;
+    }
+}
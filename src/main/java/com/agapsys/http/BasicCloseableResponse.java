@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.IOException;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Closeable response which is not bound to a pooled connection.
+ * Closing it just consumes its entity.
+ */
+final class BasicCloseableResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+    BasicCloseableResponse(StatusLine statusLine, Header[] headers, HttpEntity entity) {
+        super(statusLine);
+        setHeaders(headers);
+        setEntity(entity);
+    }
+
+    BasicCloseableResponse(org.apache.http.HttpResponse response) {
+        this(response.getStatusLine(), response.getAllHeaders(), response.getEntity());
+        setLocale(response.getLocale());
+    }
+
+    @Override
+    public void close() throws IOException {
+        EntityUtils.consume(getEntity());
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Execution of a batch of requests started by {@link HttpClient#executeAll(Collection, int, int, int)}.
+ *
+ * <p>Requests are queued per host and dispatched round-robin among hosts, so a host with many requests does not
+ * starve the others. A request holds a slot of its host until its result is consumed, since an unconsumed response
+ * keeps its pooled connection. Results are delivered in completion order through {@link #take()} / {@link #poll(long, TimeUnit)}.
+ * New requests are dispatched only while the number of requests in flight plus unconsumed results stays within the
+ * buffer limit, so a slow consumer throttles the batch instead of accumulating responses.</p>
+ *
+ * <p>Each unconsumed response keeps its pooled connection, so responses should be closed as soon as they are read.
+ * Closing the batch discards pending requests and closes unconsumed responses.</p>
+ */
+public class BatchExecution implements Closeable {
+    // CLASS SCOPE =============================================================
+    private static class HostQueue {
+        final ArrayDeque<HttpRequest> pending = new ArrayDeque<>();
+        int     active = 0; // In flight or waiting to be consumed
+        boolean ready  = false;
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final HttpClient client;
+    private final Executor   executor;
+    private final int        maxConcurrency;
+    private final int        maxPerHost;
+    private final int        maxBuffered;
+
+    private final ReentrantLock lock      = new ReentrantLock();
+    private final Condition     completed = lock.newCondition();
+
+    private final Map<String, HostQueue>  hosts       = new HashMap<>();
+    private final ArrayDeque<HostQueue>   readyHosts  = new ArrayDeque<>();
+    private final ArrayDeque<BatchResult> results     = new ArrayDeque<>();
+    private final ArrayDeque<HostQueue>   resultHosts = new ArrayDeque<>();
+    private int     inFlight  = 0;
+    private int     remaining;
+    private boolean closed    = false;
+
+    BatchExecution(HttpClient client, Executor executor, Collection<? extends HttpRequest> requests, int maxConcurrency, int maxPerHost, int maxBuffered) {
+        if (requests == null)
+            throw new IllegalArgumentException("Null requests");
+
+        if (maxConcurrency < 1)
+            throw new IllegalArgumentException("Invalid max concurrency: " + maxConcurrency);
+
+        if (maxPerHost < 1)
+            throw new IllegalArgumentException("Invalid max per host: " + maxPerHost);
+
+        if (maxBuffered < 1)
+            throw new IllegalArgumentException("Invalid max buffered: " + maxBuffered);
+
+        this.client = client;
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+        this.maxPerHost = maxPerHost;
+        this.maxBuffered = maxBuffered;
+
+        for (HttpRequest request : requests) {
+            if (request == null)
+                throw new IllegalArgumentException("Null request");
+
+            String hostKey = request.getTargetKey();
+            HostQueue queue = hosts.get(hostKey);
+
+            if (queue == null) {
+                queue = new HostQueue();
+                hosts.put(hostKey, queue);
+                queue.ready = true;
+                readyHosts.add(queue);
+            }
+
+            queue.pending.add(request);
+        }
+
+        this.remaining = requests.size();
+    }
+
+    /** Starts the execution. */
+    void start() {
+        List<HttpRequest> batch;
+        List<HostQueue> batchHosts = new ArrayList<>();
+
+        lock.lock();
+        try {
+            batch = dispatch(batchHosts);
+        } finally {
+            lock.unlock();
+        }
+
+        run(batch, batchHosts);
+    }
+
+    /**
+     * Selects the requests which can be dispatched now. Must be called while holding the lock.
+     * @param batchHosts list which receives the host queue of each selected request.
+     * @return selected requests.
+     */
+    private List<HttpRequest> dispatch(List<HostQueue> batchHosts) {
+        List<HttpRequest> batch = null;
+
+        while (!closed && !readyHosts.isEmpty() && inFlight < maxConcurrency && inFlight + results.size() < maxBuffered) {
+            HostQueue queue = readyHosts.poll();
+            queue.ready = false;
+
+            if (batch == null)
+                batch = new ArrayList<>();
+
+            batch.add(queue.pending.poll());
+            batchHosts.add(queue);
+            queue.active++;
+            inFlight++;
+
+            makeReady(queue);
+        }
+
+        return batch;
+    }
+
+    /** Puts given host back in the round-robin if it has pending requests and free slots. Must be called while holding the lock. */
+    private void makeReady(HostQueue queue) {
+        if (!queue.ready && !queue.pending.isEmpty() && queue.active < maxPerHost) {
+            queue.ready = true;
+            readyHosts.add(queue);
+        }
+    }
+
+    private void run(List<HttpRequest> batch, List<HostQueue> batchHosts) {
+        if (batch == null)
+            return;
+
+        for (int i = 0; i < batch.size(); i++) {
+            final HttpRequest request = batch.get(i);
+            final HostQueue queue = batchHosts.get(i);
+
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        HttpResponse response = null;
+                        Exception error = null;
+
+                        try {
+                            response = client.execute(request);
+                        } catch (Exception ex) {
+                            error = ex;
+                        } catch (Error err) {
+                            // Host slot must be released and waiting consumers woken up before propagating
+                            complete(queue, new BatchResult(request, null, new ExecutionException(err)));
+                            throw err;
+                        }
+
+                        complete(queue, new BatchResult(request, response, error));
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                complete(queue, new BatchResult(request, null, ex));
+            }
+        }
+    }
+
+    private void complete(HostQueue queue, BatchResult result) {
+        List<HttpRequest> batch;
+        List<HostQueue> batchHosts = new ArrayList<>();
+        boolean discard;
+
+        lock.lock();
+        try {
+            inFlight--;
+            discard = closed;
+
+            if (!discard) {
+                results.add(result);
+                resultHosts.add(queue);
+                completed.signal();
+            }
+
+            batch = dispatch(batchHosts);
+        } finally {
+            lock.unlock();
+        }
+
+        if (discard)
+            closeQuietly(result);
+
+        run(batch, batchHosts);
+    }
+
+    private static void closeQuietly(BatchResult result) {
+        if (result.isSuccessful()) {
+            try {
+                result.getResponse().close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Returns the next completed request, waiting if necessary.
+     * @return the next completed request or null if all results were already consumed (or this batch was closed).
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public BatchResult take() throws InterruptedException {
+        return poll(-1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the next completed request, waiting up to given time if necessary.
+     * @param timeout maximum time to wait. A negative value means waiting indefinitely.
+     * @param unit time unit of timeout
+     * @return the next completed request or null if all results were already consumed, this batch was closed or timeout elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public BatchResult poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (unit == null)
+            throw new IllegalArgumentException("Null time unit");
+
+        long nanos = unit.toNanos(timeout);
+        BatchResult result;
+        List<HttpRequest> batch;
+        List<HostQueue> batchHosts = new ArrayList<>();
+
+        lock.lockInterruptibly();
+        try {
+            while (results.isEmpty()) {
+                if (closed || remaining == 0)
+                    return null;
+
+                if (timeout < 0) {
+                    completed.await();
+                } else if (nanos <= 0) {
+                    return null;
+                } else {
+                    nanos = completed.awaitNanos(nanos);
+                }
+            }
+
+            result = results.poll();
+            HostQueue queue = resultHosts.poll();
+            queue.active--;
+            remaining--;
+
+            makeReady(queue);
+            batch = dispatch(batchHosts);
+        } finally {
+            lock.unlock();
+        }
+
+        run(batch, batchHosts);
+        return result;
+    }
+
+    /**
+     * Returns the number of results not consumed yet.
+     * @return the number of results not consumed yet.
+     */
+    public int getRemaining() {
+        lock.lock();
+        try {
+            return closed ? 0 : remaining;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes this batch.
+     * Requests not dispatched yet are discarded, responses of requests in flight are closed when they arrive and
+     * unconsumed responses are closed.
+     */
+    @Override
+    public void close() {
+        List<BatchResult> discarded;
+
+        lock.lock();
+        try {
+            if (closed)
+                return;
+
+            closed = true;
+            readyHosts.clear();
+            hosts.clear();
+            discarded = new ArrayList<>(results);
+            results.clear();
+            resultHosts.clear();
+            completed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        for (BatchResult result : discarded) {
+            closeQuietly(result);
+        }
+    }
+    // =========================================================================
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import java.io.IOException;
+
+/** Outcome of a request executed as part of a {@link BatchExecution}. */
+public class BatchResult {
+    private final HttpRequest  request;
+    private final HttpResponse response;
+    private final Exception    error;
+
+    BatchResult(HttpRequest request, HttpResponse response, Exception error) {
+        this.request = request;
+        this.response = response;
+        this.error = error;
+    }
+
+    /**
+     * Returns the executed request.
+     * @return the executed request.
+     */
+    public HttpRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * Returns a boolean indicating if a response was received.
+     * @return a boolean indicating if a response was received.
+     */
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    /**
+     * Returns the received response. Caller is responsible for closing it.
+     * @return the received response.
+     * @throws IOException if the request failed with an I/O error.
+     */
+    public HttpResponse getResponse() throws IOException {
+        if (error instanceof IOException)
+            throw (IOException) error;
+
+        if (error instanceof RuntimeException)
+            throw (RuntimeException) error;
+
+        if (error != null)
+            throw new IOException(error);
+
+        return response;
+    }
+
+    /**
+     * Returns the error which caused the request to fail.
+     * An {@linkplain Error} thrown while executing the request is reported wrapped in an {@linkplain java.util.concurrent.ExecutionException}.
+     * @return the error which caused the request to fail or null if a response was received.
+     */
+    public Exception getError() {
+        return error;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts objects to and from message bodies (e.g. JSON or XML bindings).
+ * Encoding writes straight into the stream sent over the network and decoding reads straight from the response
+ * content, so no intermediate string or byte array is created.
+ * Instances are shared among requests and threads, so implementations must be thread-safe.
+ * @see ObjectEntityRequest
+ * @see HttpResponse#getContent(BodyCodec, Class)
+ */
+public interface BodyCodec {
+
+    /**
+     * Returns the content type of encoded bodies.
+     * @return the content type of encoded bodies (e.g. "application/json; charset=UTF-8").
+     */
+    String getContentType();
+
+    /**
+     * Writes given object into given stream.
+     * Given stream must not be closed.
+     * @param value object to be encoded (may be null)
+     * @param out destination stream
+     * @throws IOException if there was an I/O error while writing the object.
+     */
+    void encode(Object value, OutputStream out) throws IOException;
+
+    /**
+     * Reads an object from given stream.
+     * @param <T> object type
+     * @param in content stream
+     * @param charset charset declared by the message or null if message does not declare a charset
+     * @param type object type
+     * @return decoded object.
+     * @throws IOException if there was an I/O error while reading the object or if content is invalid.
+     */
+    <T> T decode(InputStream in, String charset, Class<T> type) throws IOException;
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Source of request body content.
+ * Content is never buffered: it is copied in large chunks (or {@linkplain FileChannel#transferTo(long, long, WritableByteChannel) transferred}
+ * between channels when possible) while it is written. Sources with known length fail with an {@link IOException}
+ * if they produce a different number of bytes, so a connection is never left with a broken body.
+ */
+abstract class BodySource {
+    // CLASS SCOPE =============================================================
+    /** Size of chunks used to copy content which cannot be transferred directly. */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private static IOException invalidLength(long expected, long written) {
+        return new IOException(String.format("Invalid body length (expected %d bytes): %d", expected, written));
+    }
+
+    static void writeFully(WritableByteChannel channel, ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+
+    /** Source backed by a byte array. */
+    static final class BytesSource extends BodySource {
+        private final byte[] content;
+
+        BytesSource(byte[] content) {
+            if (content == null)
+                throw new IllegalArgumentException("Null content");
+
+            this.content = content;
+        }
+
+        @Override
+        long getLength() {
+            return content.length;
+        }
+
+        @Override
+        boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        long writeTo(OutputStream out) throws IOException {
+            out.write(content);
+            return content.length;
+        }
+
+        @Override
+        long writeTo(WritableByteChannel channel) throws IOException {
+            writeFully(channel, ByteBuffer.wrap(content));
+            return content.length;
+        }
+    }
+
+    /** Source backed by a file. Length is read when the source is created (see {@link #refresh()}). */
+    static final class FileSource extends BodySource {
+        private final File file;
+        private final long length;
+
+        FileSource(File file) {
+            if (file == null)
+                throw new IllegalArgumentException("Null file");
+
+            this.file = file;
+            this.length = file.length();
+        }
+
+        @Override
+        long getLength() {
+            return length;
+        }
+
+        @Override
+        boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        BodySource refresh() {
+            return new FileSource(file);
+        }
+
+        @Override
+        long writeTo(OutputStream out) throws IOException {
+            try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(CHUNK_SIZE, Math.max(1, length)));
+                long written = 0;
+
+                while (written < length) {
+                    ((Buffer) chunk).clear();
+                    ((Buffer) chunk).limit((int) Math.min(chunk.capacity(), length - written));
+
+                    if (fileChannel.read(chunk) < 0)
+                        throw invalidLength(length, written); // File was truncated
+
+                    out.write(chunk.array(), chunk.arrayOffset(), chunk.position());
+                    written += chunk.position();
+                }
+
+                return written;
+            }
+        }
+
+        @Override
+        long writeTo(WritableByteChannel channel) throws IOException {
+            try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                return transfer(fileChannel, 0, length, channel);
+            }
+        }
+    }
+
+    /**
+     * Transfers a region of a file channel into given channel.
+     * @return number of transferred bytes.
+     */
+    private static long transfer(FileChannel fileChannel, long position, long length, WritableByteChannel channel) throws IOException {
+        long written = 0;
+
+        while (written < length) {
+            long transferred = fileChannel.transferTo(position + written, length - written, channel);
+
+            if (transferred <= 0 && position + written >= fileChannel.size())
+                throw invalidLength(length, written); // File was truncated
+
+            written += transferred;
+        }
+
+        return written;
+    }
+
+    /** Source backed by an input stream. It can be written only once and the stream is not closed. */
+    static final class StreamSource extends BodySource {
+        private final InputStream in;
+        private final long length;
+
+        StreamSource(InputStream in, long length) {
+            if (in == null)
+                throw new IllegalArgumentException("Null stream");
+
+            this.in = in;
+            this.length = length < 0 ? -1 : length;
+        }
+
+        @Override
+        long getLength() {
+            return length;
+        }
+
+        @Override
+        boolean isRepeatable() {
+            return false;
+        }
+
+        /** Reads next chunk into given array, honoring declared length. */
+        private int read(byte[] chunk, long written) throws IOException {
+            int max = length < 0 ? chunk.length : (int) Math.min(chunk.length, length - written);
+            if (max == 0) {
+                if (in.read() >= 0)
+                    throw invalidLength(length, written + 1); // Stream is longer than declared
+
+                return -1;
+            }
+
+            int read = in.read(chunk, 0, max);
+
+            if (read < 0 && length >= 0)
+                throw invalidLength(length, written);
+
+            return read;
+        }
+
+        @Override
+        long writeTo(OutputStream out) throws IOException {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            long written = 0;
+            int read;
+
+            while ((read = read(chunk, written)) >= 0) {
+                out.write(chunk, 0, read);
+                written += read;
+            }
+
+            return written;
+        }
+
+        @Override
+        long writeTo(WritableByteChannel channel) throws IOException {
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            long written = 0;
+            int read;
+
+            while ((read = read(chunk.array(), written)) >= 0) {
+                ((Buffer) chunk).clear();
+                ((Buffer) chunk).limit(read);
+                writeFully(channel, chunk);
+                written += read;
+            }
+
+            return written;
+        }
+    }
+
+    /**
+     * Source backed by a readable channel. It can be written only once and the channel is not closed.
+     * A {@linkplain FileChannel file channel} with known length is transferred from its current position without intermediate copies when possible.
+     */
+    static final class ChannelSource extends BodySource {
+        private final ReadableByteChannel source;
+        private final long length;
+
+        ChannelSource(ReadableByteChannel source, long length) {
+            if (source == null)
+                throw new IllegalArgumentException("Null channel");
+
+            this.source = source;
+            this.length = length < 0 ? -1 : length;
+        }
+
+        @Override
+        long getLength() {
+            return length;
+        }
+
+        @Override
+        boolean isRepeatable() {
+            return false;
+        }
+
+        /** Reads next chunk into given buffer (flipped on return), honoring declared length. */
+        private int read(ByteBuffer chunk, long written) throws IOException {
+            ((Buffer) chunk).clear();
+
+            if (length >= 0) {
+                if (written == length) {
+                    if (hasMore(chunk))
+                        throw invalidLength(length, written + 1); // Channel is longer than declared
+
+                    return -1;
+                }
+
+                ((Buffer) chunk).limit((int) Math.min(chunk.capacity(), length - written));
+            }
+
+            int read;
+            do {
+                read = source.read(chunk);
+            } while (read == 0);
+
+            if (read < 0 && length >= 0)
+                throw invalidLength(length, written);
+
+            ((Buffer) chunk).flip();
+            return read;
+        }
+
+        /** Checks if source has content beyond declared length by reading a single byte into given buffer. */
+        private boolean hasMore(ByteBuffer chunk) throws IOException {
+            ((Buffer) chunk).limit(1);
+
+            int read;
+            do {
+                read = source.read(chunk);
+            } while (read == 0);
+
+            return read > 0;
+        }
+
+        @Override
+        long writeTo(OutputStream out) throws IOException {
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            long written = 0;
+            int read;
+
+            while ((read = read(chunk, written)) >= 0) {
+                out.write(chunk.array(), chunk.arrayOffset(), read);
+                written += read;
+            }
+
+            return written;
+        }
+
+        @Override
+        long writeTo(WritableByteChannel channel) throws IOException {
+            if (source instanceof FileChannel && length >= 0) {
+                FileChannel fileChannel = (FileChannel) source;
+                long start = fileChannel.position();
+                long written = transfer(fileChannel, start, length, channel);
+                fileChannel.position(start + written); // As reading would do
+
+                if (fileChannel.size() > start + written)
+                    throw invalidLength(length, written + 1); // Channel is longer than declared
+
+                return written;
+            }
+
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            long written = 0;
+            int read;
+
+            while ((read = read(chunk, written)) >= 0) {
+                writeFully(channel, chunk);
+                written += read;
+            }
+
+            return written;
+        }
+    }
+
+    /** Source which pushes content through a {@link StreamingRequest.BodyWriter}. */
+    static final class WriterSource extends BodySource {
+        private final StreamingRequest.BodyWriter writer;
+        private final long length;
+
+        WriterSource(StreamingRequest.BodyWriter writer, long length) {
+            if (writer == null)
+                throw new IllegalArgumentException("Null writer");
+
+            this.writer = writer;
+            this.length = length < 0 ? -1 : length;
+        }
+
+        @Override
+        long getLength() {
+            return length;
+        }
+
+        @Override
+        boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        long writeTo(OutputStream out) throws IOException {
+            final long[] written = {0};
+
+            // Writer must neither close the destination nor write beyond declared length
+            writer.writeTo(new FilterOutputStream(out) {
+                private void check(long count) throws IOException {
+                    if (length >= 0 && written[0] + count > length)
+                        throw invalidLength(length, written[0] + count);
+
+                    written[0] += count;
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    check(1);
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    check(len);
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            });
+
+            if (length >= 0 && written[0] != length)
+                throw invalidLength(length, written[0]);
+
+            return written[0];
+        }
+
+        @Override
+        long writeTo(WritableByteChannel channel) throws IOException {
+            OutputStream out = Channels.newOutputStream(channel);
+            return writeTo(out);
+        }
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    /**
+     * Returns content length.
+     * @return content length or -1 if it is unknown.
+     */
+    abstract long getLength();
+
+    /**
+     * Returns a boolean indicating if content can be written more than once.
+     * @return a boolean indicating if content can be written more than once.
+     */
+    abstract boolean isRepeatable();
+
+    /**
+     * Returns a source to be used by a new entity.
+     * Default implementation returns this instance.
+     * @return a source to be used by a new entity.
+     */
+    BodySource refresh() {
+        return this;
+    }
+
+    /**
+     * Writes content into given stream.
+     * @param out destination stream (not closed)
+     * @return number of written bytes.
+     * @throws IOException if an I/O error happened.
+     */
+    abstract long writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Writes content into given channel.
+     * @param channel destination channel (not closed)
+     * @return number of written bytes.
+     * @throws IOException if an I/O error happened.
+     */
+    abstract long writeTo(WritableByteChannel channel) throws IOException;
+    // =========================================================================
+}
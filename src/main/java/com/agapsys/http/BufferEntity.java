@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import com.agapsys.http.utils.IOUtils;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * Repeatable entity backed by a byte buffer (either on heap or memory-mapped).
+ * Each consumer reads through its own duplicate, so the buffer can be shared.
+ */
+final class BufferEntity extends AbstractHttpEntity implements ChannelEntity {
+    private final ByteBuffer buffer;
+
+    BufferEntity(ByteBuffer buffer) {
+        if (buffer == null)
+            throw new IllegalArgumentException("Null buffer");
+
+        this.buffer = buffer;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public InputStream getContent() {
+        return IOUtils.newInputStream(buffer.duplicate());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (out == null)
+            throw new IllegalArgumentException("Null output stream");
+
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            IOUtils.copy(getContent(), out);
+        }
+    }
+
+    /**
+     * Writes the whole content into given channel without intermediate copies.
+     * @param channel destination channel
+     * @return number of written bytes.
+     * @throws IOException if an I/O error happened.
+     */
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer src = buffer.duplicate();
+        long total = src.remaining();
+
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+
+        return total;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of heap buffers borrowed by response readers and request encoders of a {@link HttpClient}.
+ * Buffers are grouped by size class (powers of two from {@link #MIN_BUFFER_SIZE} to {@link #MAX_BUFFER_SIZE}).
+ * Each thread keeps one released buffer per class; other released buffers go to a bounded queue shared by all threads.
+ * Larger requests are allocated and discarded without pooling.
+ */
+final class BufferPool {
+    // CLASS SCOPE =============================================================
+    static final int MIN_BUFFER_SIZE = 4 * 1024;
+    static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    private static final int MIN_SHIFT    = Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE) - MIN_SHIFT + 1;
+    private static final int MAX_SHARED   = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Returns the size class of given capacity.
+     * @param capacity buffer capacity
+     * @return size class or -1 if capacity is larger than the largest class.
+     */
+    private static int getSizeClass(int capacity) {
+        if (capacity <= MIN_BUFFER_SIZE)
+            return 0;
+
+        if (capacity > MAX_BUFFER_SIZE)
+            return -1;
+
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final ThreadLocal<ByteBuffer[]> local = new ThreadLocal<ByteBuffer[]>() {
+        @Override
+        protected ByteBuffer[] initialValue() {
+            return new ByteBuffer[SIZE_CLASSES];
+        }
+    };
+
+    private final Queue<ByteBuffer>[] shared;
+    private final AtomicInteger[]     sharedSizes;
+    private final AtomicLong          hits             = new AtomicLong();
+    private final AtomicLong          misses           = new AtomicLong();
+    private final AtomicLong          outstandingBytes = new AtomicLong();
+
+    BufferPool() {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Queue<ByteBuffer>[] queues = new Queue[SIZE_CLASSES];
+        shared = queues;
+        sharedSizes = new AtomicInteger[SIZE_CLASSES];
+
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            shared[i] = new ConcurrentLinkedQueue<>();
+            sharedSizes[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Borrows a cleared buffer.
+     * @param minCapacity minimum capacity
+     * @return a buffer with at least given capacity which should be given back through {@link #release(ByteBuffer)}.
+     */
+    ByteBuffer acquire(int minCapacity) {
+        if (minCapacity < 0)
+            throw new IllegalArgumentException("Invalid capacity: " + minCapacity);
+
+        int sizeClass = getSizeClass(minCapacity);
+        ByteBuffer buffer = null;
+
+        if (sizeClass >= 0) {
+            ByteBuffer[] slots = local.get();
+            buffer = slots[sizeClass];
+
+            if (buffer != null) {
+                slots[sizeClass] = null;
+            } else {
+                buffer = shared[sizeClass].poll();
+
+                if (buffer != null)
+                    sharedSizes[sizeClass].decrementAndGet();
+            }
+        }
+
+        if (buffer != null) {
+            hits.incrementAndGet();
+            ((Buffer) buffer).clear();
+        } else {
+            misses.incrementAndGet();
+            buffer = ByteBuffer.allocate(sizeClass >= 0 ? MIN_BUFFER_SIZE << sizeClass : minCapacity);
+        }
+
+        outstandingBytes.addAndGet(buffer.capacity());
+        return buffer;
+    }
+
+    /**
+     * Gives back a buffer obtained from {@link #acquire(int)}.
+     * Buffer must not be used after this call.
+     * @param buffer buffer to be released
+     */
+    void release(ByteBuffer buffer) {
+        outstandingBytes.addAndGet(-buffer.capacity());
+
+        int sizeClass = getSizeClass(buffer.capacity());
+        if (sizeClass < 0 || buffer.capacity() != MIN_BUFFER_SIZE << sizeClass)
+            return; // Not pooled
+
+        ByteBuffer[] slots = local.get();
+
+        if (slots[sizeClass] == null) {
+            slots[sizeClass] = buffer;
+        } else if (sharedSizes[sizeClass].incrementAndGet() > MAX_SHARED) {
+            sharedSizes[sizeClass].decrementAndGet();
+        } else {
+            shared[sizeClass].offer(buffer);
+        }
+    }
+
+    /**
+     * Returns a snapshot of pool usage.
+     * @return a snapshot of pool usage.
+     */
+    BufferPoolStats getStats() {
+        return new BufferPoolStats(hits.get(), misses.get(), outstandingBytes.get());
+    }
+    // =========================================================================
+}
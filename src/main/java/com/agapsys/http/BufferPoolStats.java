@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+/** Snapshot of buffer pool usage (see {@link HttpClient#getBufferPoolStats()}). */
+public class BufferPoolStats {
+    private final long hits;
+    private final long misses;
+    private final long outstandingBytes;
+
+    public BufferPoolStats(long hits, long misses, long outstandingBytes) {
+        this.hits = hits;
+        this.misses = misses;
+        this.outstandingBytes = outstandingBytes;
+    }
+
+    /**
+     * Returns the number of buffers served from the pool.
+     * @return the number of buffers served from the pool.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of buffers allocated because the pool had no buffer to serve.
+     * @return the number of buffers allocated by the pool.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of buffers served from the pool.
+     * @return a value between 0 and 1 (0 if no buffer was requested).
+     */
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Returns the number of bytes held by buffers currently borrowed from the pool.
+     * @return the number of bytes currently borrowed.
+     */
+    public long getOutstandingBytes() {
+        return outstandingBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[hits: %d; misses: %d; hit rate: %.3f; outstanding bytes: %d]", hits, misses, getHitRate(), outstandingBytes);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import java.util.List;
+
+/**
+ * Storage backing a {@link ResponseCache}.
+ * Implementations must be thread-safe. Storage failures are not reported: a response which cannot be stored is simply not cached.
+ */
+interface CacheStore {
+
+    /**
+     * Returns the maximum number of bytes held by this store.
+     * @return the maximum number of bytes held by this store.
+     */
+    long getMaxSize();
+
+    /**
+     * Returns the stored response for given key which is selected by given request.
+     * @param key cache key
+     * @param request request
+     * @param defaultHeaders default headers of the client executing the request
+     * @return stored response or null if there is no such response.
+     */
+    CachedResponse get(String key, HttpRequest request, List<HttpHeader> defaultHeaders);
+
+    /**
+     * Stores a response, replacing any stored response for the same key and 'Vary' values.
+     * @param key cache key
+     * @param response response to be stored.
+     */
+    void put(String key, CachedResponse response);
+
+    /**
+     * Removes all responses stored for given key.
+     * @param key cache key.
+     */
+    void remove(String key);
+
+    /** Removes all stored responses. */
+    void clear();
+
+    /**
+     * Returns approximately how many bytes are held by this store.
+     * @return approximated size in bytes.
+     */
+    long getSize();
+
+    /**
+     * Returns the number of stored responses.
+     * @return the number of stored responses.
+     */
+    int getEntryCount();
+}
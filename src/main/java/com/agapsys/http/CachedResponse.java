@@ -0,0 +1,393 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.StatusLine;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHeaderValueParser;
+
+/**
+ * Immutable response stored by a {@link ResponseCache}, with the metadata needed to compute its freshness (RFC 7234).
+ */
+final class CachedResponse {
+    // CLASS SCOPE =============================================================
+    /** Heuristic freshness is capped to one day. */
+    private static final long MAX_HEURISTIC_LIFETIME = 24 * 60 * 60 * 1000L;
+
+    /**
+     * Returns the value of a directive in given 'Cache-Control' (or 'Pragma') headers.
+     * @param headers all headers of a message
+     * @param headerName name of the header holding directives
+     * @param directive directive name
+     * @return directive value, an empty string if directive has no value or null if directive is not present.
+     */
+    static String getDirective(Header[] headers, String headerName, String directive) {
+        for (Header header : headers) {
+            if (!header.getName().equalsIgnoreCase(headerName))
+                continue;
+
+            for (HeaderElement element : BasicHeaderValueParser.parseElements(header.getValue(), null)) {
+                if (element.getName().equalsIgnoreCase(directive))
+                    return element.getValue() == null ? "" : element.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the value of a directive holding a number of seconds.
+     * @return directive value in milliseconds or -1 if directive is not present or invalid.
+     */
+    static long getSecondsDirective(Header[] headers, String directive) {
+        String value = getDirective(headers, "Cache-Control", directive);
+
+        if (value == null || value.isEmpty())
+            return -1;
+
+        try {
+            return Math.max(0, Long.parseLong(value)) * 1000;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    static Header getFirstHeader(Header[] headers, String name) {
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(name))
+                return header;
+        }
+
+        return null;
+    }
+
+    static long getDateHeader(Header[] headers, String name) {
+        Header header = getFirstHeader(headers, name);
+        if (header == null)
+            return -1;
+
+        Date date = DateUtils.parseDate(header.getValue());
+        return date == null ? -1 : date.getTime();
+    }
+
+    /**
+     * Returns the combined value of request headers with given name, as sent on the wire.
+     * @param request request
+     * @param defaultHeaders default headers of the client
+     * @param name header name
+     * @return combined header value or null if there is no such header.
+     */
+    static String getRequestHeader(HttpRequest request, List<HttpHeader> defaultHeaders, String name) {
+        StringBuilder sb = null;
+
+        for (List<HttpHeader> headers : Arrays.asList(defaultHeaders, request.getHeaderList())) {
+            for (HttpHeader header : headers) {
+                if (!header.getName().equalsIgnoreCase(name))
+                    continue;
+
+                if (sb == null) {
+                    sb = new StringBuilder(header.getValue());
+                } else {
+                    sb.append(',').append(header.getValue());
+                }
+            }
+        }
+
+        return sb == null ? null : sb.toString();
+    }
+
+    /**
+     * Returns the names of the request headers a response varies on.
+     * @param headers response headers
+     * @return header names or null if response varies on everything ('Vary: *').
+     */
+    static List<String> getVaryNames(Header[] headers) {
+        List<String> names = new ArrayList<>();
+
+        for (Header header : headers) {
+            if (!header.getName().equalsIgnoreCase("Vary"))
+                continue;
+
+            for (HeaderElement element : BasicHeaderValueParser.parseElements(header.getValue(), null)) {
+                if (element.getName().equals("*"))
+                    return null;
+
+                names.add(element.getName());
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Merges the headers of a '304 Not Modified' response into stored headers.
+     * @param stored stored headers
+     * @param updates headers of the '304' response
+     * @return merged headers.
+     */
+    private static Header[] merge(Header[] stored, Header[] updates) {
+        Map<String, List<Header>> merged = new LinkedHashMap<>();
+
+        for (Header header : stored) {
+            String key = header.getName().toLowerCase();
+            List<Header> list = merged.get(key);
+            if (list == null) {
+                list = new ArrayList<>();
+                merged.put(key, list);
+            }
+
+            list.add(header);
+        }
+
+        Map<String, List<Header>> updated = new LinkedHashMap<>();
+        for (Header header : updates) {
+            String key = header.getName().toLowerCase();
+
+            if (key.equals("content-length") || key.equals("transfer-encoding") || key.equals("content-encoding") || key.equals("content-type"))
+                continue;
+
+            List<Header> list = updated.get(key);
+            if (list == null) {
+                list = new ArrayList<>();
+                updated.put(key, list);
+            }
+
+            list.add(header);
+        }
+        merged.putAll(updated);
+
+        List<Header> result = new ArrayList<>();
+        for (List<Header> list : merged.values()) {
+            result.addAll(list);
+        }
+
+        return result.toArray(new Header[result.size()]);
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final StatusLine statusLine;
+    private final Header[]   headers;
+    private final ByteBuffer body;
+    private final long       requestTime;
+    private final long       responseTime;
+    private final long       correctedInitialAge;
+    private final long       freshnessLifetime;
+    private final Map<String, String> varyValues;
+
+    /**
+     * Constructor.
+     * @param statusLine response status line
+     * @param headers response headers
+     * @param body response content (shared read-only by every response served from this instance)
+     * @param requestTime time when the request was sent
+     * @param responseTime time when the response was received
+     * @param varyValues request header values selected by 'Vary' (lowercase name to value, null values for absent headers)
+     */
+    CachedResponse(StatusLine statusLine, Header[] headers, ByteBuffer body, long requestTime, long responseTime, Map<String, String> varyValues) {
+        this.statusLine = statusLine;
+        this.headers = headers;
+        this.body = body.asReadOnlyBuffer();
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+        this.varyValues = Collections.unmodifiableMap(varyValues);
+
+        // Age calculation (RFC 7234, section 4.2.3)
+        long date = getDateHeader(headers, "Date");
+        long apparentAge = date < 0 ? 0 : Math.max(0, responseTime - date);
+        long ageValue = 0;
+        Header ageHeader = getFirstHeader(headers, "Age");
+        if (ageHeader != null) {
+            try {
+                ageValue = Math.max(0, Long.parseLong(ageHeader.getValue().trim())) * 1000;
+            } catch (NumberFormatException ignored) {}
+        }
+        this.correctedInitialAge = Math.max(apparentAge, ageValue + (responseTime - requestTime));
+
+        // Freshness lifetime (RFC 7234, section 4.2.1)
+        long lifetime;
+        if (getDirective(headers, "Cache-Control", "no-cache") != null) {
+            lifetime = 0;
+        } else if ((lifetime = getSecondsDirective(headers, "max-age")) < 0) {
+            long expires = getDateHeader(headers, "Expires");
+            if (expires >= 0) {
+                lifetime = Math.max(0, expires - (date < 0 ? responseTime : date));
+            } else if (getFirstHeader(headers, "Expires") != null) {
+                lifetime = 0; // Invalid dates mean "already expired"
+            } else {
+                long lastModified = getDateHeader(headers, "Last-Modified");
+                lifetime = lastModified < 0 ? 0 : Math.min(MAX_HEURISTIC_LIFETIME, Math.max(0, (date < 0 ? responseTime : date) - lastModified) / 10);
+            }
+        }
+        this.freshnessLifetime = lifetime;
+    }
+
+    /**
+     * Returns the current age of this response.
+     * @param now current time
+     * @return current age in milliseconds.
+     */
+    long getCurrentAge(long now) {
+        return correctedInitialAge + Math.max(0, now - responseTime);
+    }
+
+    /**
+     * Returns a boolean indicating if this response can be served without revalidation.
+     * @param now current time
+     * @return a boolean indicating if this response is fresh.
+     */
+    boolean isFresh(long now) {
+        return freshnessLifetime > getCurrentAge(now);
+    }
+
+    /**
+     * Checks if given request selects this response according to its 'Vary' header.
+     * @param request request
+     * @param defaultHeaders default headers of the client
+     * @return a boolean indicating if given request selects this response.
+     */
+    boolean matches(HttpRequest request, List<HttpHeader> defaultHeaders) {
+        for (Map.Entry<String, String> entry : varyValues.entrySet()) {
+            String value = getRequestHeader(request, defaultHeaders, entry.getKey());
+
+            if (value == null ? entry.getValue() != null : !value.equals(entry.getValue()))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the headers of a conditional request which revalidates this response.
+     * @return conditional headers. An empty list means this response cannot be revalidated.
+     */
+    List<HttpHeader> getConditionalHeaders() {
+        Header etag = getFirstHeader(headers, "ETag");
+        Header lastModified = getFirstHeader(headers, "Last-Modified");
+
+        if (etag == null && lastModified == null)
+            return Collections.emptyList();
+
+        List<HttpHeader> conditionalHeaders = new ArrayList<>(2);
+        if (etag != null)
+            conditionalHeaders.add(new HttpHeader("If-None-Match", etag.getValue()));
+
+        if (lastModified != null)
+            conditionalHeaders.add(new HttpHeader("If-Modified-Since", lastModified.getValue()));
+
+        return conditionalHeaders;
+    }
+
+    /**
+     * Returns a copy of this response updated by a '304 Not Modified' response.
+     * @param notModifiedHeaders headers of the '304' response
+     * @param requestTime time when the conditional request was sent
+     * @param responseTime time when the '304' response was received
+     * @return updated response.
+     */
+    CachedResponse revalidated(Header[] notModifiedHeaders, long requestTime, long responseTime) {
+        Header[] merged = merge(removeAge(headers), notModifiedHeaders);
+        return new CachedResponse(statusLine, merged, body, requestTime, responseTime, varyValues);
+    }
+
+    private static Header[] removeAge(Header[] headers) {
+        List<Header> list = new ArrayList<>(headers.length);
+        for (Header header : headers) {
+            if (!header.getName().equalsIgnoreCase("Age"))
+                list.add(header);
+        }
+
+        return list.toArray(new Header[list.size()]);
+    }
+
+    /**
+     * Returns approximately how many bytes this response occupies.
+     * @return approximated size in bytes.
+     */
+    long getSize() {
+        long size = 128 + body.remaining();
+
+        for (Header header : headers) {
+            size += 48 + 2 * (header.getName().length() + header.getValue().length());
+        }
+
+        return size;
+    }
+
+    StatusLine getStatusLine() {
+        return statusLine;
+    }
+
+    Header[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns a new response which shares the metadata of this one but is backed by another buffer.
+     * @param body response content
+     * @return new response.
+     */
+    CachedResponse withBody(ByteBuffer body) {
+        return new CachedResponse(statusLine, headers, body, requestTime, responseTime, varyValues);
+    }
+
+    ByteBuffer getBody() {
+        return body.duplicate();
+    }
+
+    long getRequestTime() {
+        return requestTime;
+    }
+
+    long getResponseTime() {
+        return responseTime;
+    }
+
+    Map<String, String> getVaryValues() {
+        return varyValues;
+    }
+
+    /**
+     * Creates a response which serves this cached response.
+     * @param now current time (used to compute the 'Age' header).
+     * @return a response which serves this cached response.
+     */
+    HttpResponse toResponse(long now) {
+        Header[] responseHeaders = removeAge(headers);
+        responseHeaders = Arrays.copyOf(responseHeaders, responseHeaders.length + 1);
+        responseHeaders[responseHeaders.length - 1] = new BasicHeader("Age", Long.toString(getCurrentAge(now) / 1000));
+
+        BufferEntity entity = new BufferEntity(body);
+        entity.setContentType(getFirstHeader(headers, "Content-Type"));
+        entity.setContentEncoding(getFirstHeader(headers, "Content-Encoding"));
+
+        return new HttpResponse(new BasicCloseableResponse(statusLine, responseHeaders, entity));
+    }
+    // =========================================================================
+}
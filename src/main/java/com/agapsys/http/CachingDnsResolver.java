@@ -0,0 +1,330 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+
+/**
+ * DNS resolver which caches lookups made by a delegate resolver (see {@link HttpClient#setDnsResolver(DnsResolver)}).
+ * Successful lookups are cached for the positive TTL and failed ones for the negative TTL. Entries used during the
+ * last part of their TTL are refreshed in background before they expire, and expired entries are still served
+ * (while a background refresh is made) up to a maximum staleness, so connections to popular hosts never wait for a
+ * DNS round trip. Failed refreshes keep the previous addresses.
+ * A single instance can be shared by multiple clients and threads.
+ */
+public class CachingDnsResolver implements DnsResolver {
+    // CLASS SCOPE =============================================================
+    public static final long   DEFAULT_POSITIVE_TTL  = 60000;
+    public static final long   DEFAULT_NEGATIVE_TTL  = 5000;
+    public static final long   DEFAULT_MAX_STALE     = 60000;
+    public static final double DEFAULT_REFRESH_AHEAD = 0.8;
+
+    /** Number of entries above which entries which cannot be served anymore are purged. */
+    private static final int PURGE_THRESHOLD = 1024;
+
+    private static final class Entry {
+        final InetAddress[]  addresses; // Null for failed lookups
+        final String         error;
+        final long           refreshAt; // Nano times
+        final long           expiresAt;
+        final long           staleUntil;
+        final AtomicBoolean  refreshing = new AtomicBoolean();
+
+        Entry(InetAddress[] addresses, String error, long refreshAt, long expiresAt, long staleUntil) {
+            this.addresses = addresses;
+            this.error = error;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+            this.staleUntil = staleUntil;
+        }
+
+        InetAddress[] get() throws UnknownHostException {
+            if (addresses == null)
+                throw new UnknownHostException(error);
+
+            return addresses.clone();
+        }
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final DnsResolver delegate;
+    private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+    private final LatencyHistogram latencies = new LatencyHistogram(false);
+    private final AtomicLong hits      = new AtomicLong();
+    private final AtomicLong misses    = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final ThreadPoolExecutor refresher;
+
+    private volatile long   positiveTtl  = DEFAULT_POSITIVE_TTL;
+    private volatile long   negativeTtl  = DEFAULT_NEGATIVE_TTL;
+    private volatile long   maxStale     = DEFAULT_MAX_STALE;
+    private volatile double refreshAhead = DEFAULT_REFRESH_AHEAD;
+
+    /** Creates a resolver which caches lookups made by the system resolver. */
+    public CachingDnsResolver() {
+        this(SystemDefaultDnsResolver.INSTANCE);
+    }
+
+    /**
+     * Constructor.
+     * @param delegate resolver whose lookups are cached.
+     */
+    public CachingDnsResolver(DnsResolver delegate) {
+        if (delegate == null)
+            throw new IllegalArgumentException("Null delegate");
+
+        this.delegate = delegate;
+
+        // Single background thread, which terminates when idle
+        this.refresher = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "http-client-dns");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.refresher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the time (in milliseconds) successful lookups are cached.
+     * @return positive TTL in milliseconds.
+     */
+    public long getPositiveTtl() {
+        return positiveTtl;
+    }
+
+    /**
+     * Sets the time successful lookups are cached. Entries already cached are not affected.
+     * @param positiveTtl positive TTL in milliseconds.
+     */
+    public void setPositiveTtl(long positiveTtl) {
+        if (positiveTtl < 0)
+            throw new IllegalArgumentException("Invalid positive TTL: " + positiveTtl);
+
+        this.positiveTtl = positiveTtl;
+    }
+
+    /**
+     * Returns the time (in milliseconds) failed lookups are cached.
+     * @return negative TTL in milliseconds.
+     */
+    public long getNegativeTtl() {
+        return negativeTtl;
+    }
+
+    /**
+     * Sets the time failed lookups are cached. It is also the minimum interval between failed background refreshes
+     * of an entry. Entries already cached are not affected.
+     * @param negativeTtl negative TTL in milliseconds.
+     */
+    public void setNegativeTtl(long negativeTtl) {
+        if (negativeTtl < 0)
+            throw new IllegalArgumentException("Invalid negative TTL: " + negativeTtl);
+
+        this.negativeTtl = negativeTtl;
+    }
+
+    /**
+     * Returns the time (in milliseconds) an expired entry can still be served while it is refreshed in background.
+     * @return maximum staleness in milliseconds.
+     */
+    public long getMaxStale() {
+        return maxStale;
+    }
+
+    /**
+     * Sets the time an expired entry can still be served while it is refreshed in background.
+     * @param maxStale maximum staleness in milliseconds (0 makes lookups of expired entries synchronous).
+     */
+    public void setMaxStale(long maxStale) {
+        if (maxStale < 0)
+            throw new IllegalArgumentException("Invalid max stale: " + maxStale);
+
+        this.maxStale = maxStale;
+    }
+
+    /**
+     * Returns the fraction of the positive TTL after which a used entry is refreshed in background.
+     * @return refresh-ahead fraction.
+     */
+    public double getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    /**
+     * Sets the fraction of the positive TTL after which a used entry is refreshed in background.
+     * @param refreshAhead refresh-ahead fraction (greater than 0 and up to 1, where 1 refreshes entries only when they expire).
+     */
+    public void setRefreshAhead(double refreshAhead) {
+        if (!(refreshAhead > 0 && refreshAhead <= 1))
+            throw new IllegalArgumentException("Invalid refresh ahead: " + refreshAhead);
+
+        this.refreshAhead = refreshAhead;
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        if (host == null)
+            throw new IllegalArgumentException("Null host");
+
+        Entry entry = cache.get(host);
+        long now = System.nanoTime();
+
+        if (entry != null && now - entry.staleUntil < 0) {
+            if (now - entry.refreshAt >= 0)
+                refresh(host, entry);
+
+            hits.incrementAndGet();
+            return entry.get();
+        }
+
+        misses.incrementAndGet();
+        return lookup(host, null).get();
+    }
+
+    /**
+     * Looks up given host through the delegate resolver and caches the result.
+     * @param host host name
+     * @param previous entry being refreshed or null if this is not a refresh.
+     * @return cached entry.
+     */
+    private Entry lookup(String host, Entry previous) {
+        long start = System.nanoTime();
+        InetAddress[] addresses = null;
+        String error = null;
+
+        try {
+            addresses = delegate.resolve(host);
+        } catch (UnknownHostException ex) {
+            error = ex.getMessage() != null ? ex.getMessage() : host;
+        }
+
+        long now = System.nanoTime();
+        latencies.record(TimeUnit.NANOSECONDS.toMicros(now - start));
+
+        Entry entry;
+        if (addresses != null) {
+            long ttl = TimeUnit.MILLISECONDS.toNanos(positiveTtl);
+            long expiresAt = now + ttl;
+            entry = new Entry(addresses, null, now + (long) (ttl * refreshAhead), expiresAt, expiresAt + TimeUnit.MILLISECONDS.toNanos(maxStale));
+        } else if (previous != null && previous.addresses != null) {
+            // Failed refresh: previous addresses are kept (up to their staleness limit) and retried later
+            long retryAt = Math.min(now + TimeUnit.MILLISECONDS.toNanos(negativeTtl), previous.staleUntil);
+            entry = new Entry(previous.addresses, null, retryAt, previous.expiresAt, previous.staleUntil);
+        } else {
+            long expiresAt = now + TimeUnit.MILLISECONDS.toNanos(negativeTtl);
+            entry = new Entry(null, error, expiresAt, expiresAt, expiresAt);
+        }
+
+        if (previous == null) {
+            cache.put(host, entry);
+
+            if (cache.size() > PURGE_THRESHOLD)
+                purge(now);
+        } else {
+            cache.replace(host, previous, entry);
+        }
+
+        return entry;
+    }
+
+    /** Refreshes given entry in background, unless it is already being refreshed. */
+    private void refresh(final String host, final Entry entry) {
+        if (!entry.refreshing.compareAndSet(false, true))
+            return;
+
+        try {
+            refresher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    refreshes.incrementAndGet();
+
+                    try {
+                        lookup(host, entry);
+                    } catch (RuntimeException ex) {
+                        entry.refreshing.set(false); // Delegate failure: a later call retries
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    /** Removes entries which cannot be served anymore. */
+    private void purge(long now) {
+        Iterator<Entry> iterator = cache.values().iterator();
+
+        while (iterator.hasNext()) {
+            if (now - iterator.next().staleUntil >= 0)
+                iterator.remove();
+        }
+    }
+
+    /** Removes all cached entries. */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Returns the number of lookups served from the cache (including expired entries served while being refreshed).
+     * @return the number of cache hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups which waited for the delegate resolver.
+     * @return the number of cache misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of background refreshes.
+     * @return the number of background refreshes.
+     */
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    /**
+     * Returns the latencies of lookups made by the delegate resolver (both synchronous and background ones).
+     * @return a snapshot of lookup latencies (in microseconds).
+     */
+    public HistogramSnapshot getLookupLatencies() {
+        return latencies.snapshot();
+    }
+    // =========================================================================
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Entity which can write its content straight into a channel.
+ * Request bodies implementing this interface are written into the socket channel of plain connections when
+ * available (see {@link ConnectionPoolSettings#setZeroCopyUploads(boolean)}), so file content can be sent with
+ * {@linkplain java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel) zero-copy transfers}.
+ */
+interface ChannelEntity {
+
+    /**
+     * Writes the whole content into given channel.
+     * Given channel is not closed.
+     * @param channel destination channel
+     * @return number of written bytes.
+     * @throws IOException if an I/O error happened.
+     */
+    long writeTo(WritableByteChannel channel) throws IOException;
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import javax.net.ssl.SSLSocket;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+/**
+ * Request executor of wrapped client.
+ * Marks the boundaries of each exchange for the {@link RequestTimer} of an execution and writes bodies implementing
+ * {@link ChannelEntity} straight into the socket channel of plain connections.
+ */
+final class ClientRequestExecutor extends HttpRequestExecutor {
+    // CLASS SCOPE =============================================================
+    /**
+     * Returns the channel which the body of given request can be written into.
+     * @param request request to be sent
+     * @param conn connection
+     * @return socket channel or null if the body must be sent through the connection.
+     */
+    private static SocketChannel getChannel(org.apache.http.HttpRequest request, HttpClientConnection conn) {
+        if (!(request instanceof HttpEntityEnclosingRequest) || !(conn instanceof ManagedHttpClientConnection))
+            return null;
+
+        HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) request;
+        HttpEntity entity = entityRequest.getEntity();
+
+        // Chunked bodies need framing and 'Expect: 100-continue' needs waiting before the body is sent
+        if (!(entity instanceof ChannelEntity) || entity.getContentLength() < 0 || entityRequest.expectContinue())
+            return null;
+
+        Socket socket = ((ManagedHttpClientConnection) conn).getSocket();
+        return socket == null || socket instanceof SSLSocket ? null : socket.getChannel();
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    @Override
+    public org.apache.http.HttpResponse execute(org.apache.http.HttpRequest request, HttpClientConnection conn, HttpContext context) throws IOException, HttpException {
+        RequestTimer timer = RequestTimer.get(context);
+
+        if (timer == null)
+            return super.execute(request, conn, context);
+
+        timer.exchangeStarted(System.nanoTime());
+        org.apache.http.HttpResponse response = super.execute(request, conn, context);
+        timer.responseReceived(System.nanoTime());
+        return response;
+    }
+
+    @Override
+    protected org.apache.http.HttpResponse doSendRequest(org.apache.http.HttpRequest request, HttpClientConnection conn, HttpContext context) throws IOException, HttpException {
+        SocketChannel channel = getChannel(request, conn);
+
+        if (channel == null)
+            return super.doSendRequest(request, conn, context);
+
+        HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+
+        context.setAttribute(HttpCoreContext.HTTP_CONNECTION, conn);
+        context.setAttribute(HttpCoreContext.HTTP_REQ_SENT, Boolean.FALSE);
+
+        conn.sendRequestHeader(request);
+        conn.flush(); // Head is buffered by the connection
+
+        long length = entity.getContentLength();
+        long written = ((ChannelEntity) entity).writeTo(channel);
+
+        if (written != length)
+            throw new IOException(String.format("Invalid body length (expected %d bytes): %d", length, written));
+
+        context.setAttribute(HttpCoreContext.HTTP_REQ_SENT, Boolean.TRUE);
+        return null;
+    }
+    // =========================================================================
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Pool of {@linkplain Deflater deflaters} and {@linkplain Inflater inflaters}.
+ * Each instance owns native memory which is only released by {@code end()}, so instances are reset and reused
+ * instead of being created for every body.
+ */
+final class CodecPool {
+    // CLASS SCOPE =============================================================
+    private static final int MAX_POOLED = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    private static class Pool<T> {
+        final Queue<T>      instances = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size      = new AtomicInteger();
+
+        T poll() {
+            T instance = instances.poll();
+
+            if (instance != null)
+                size.decrementAndGet();
+
+            return instance;
+        }
+
+        boolean offer(T instance) {
+            if (size.incrementAndGet() > MAX_POOLED) {
+                size.decrementAndGet();
+                return false;
+            }
+
+            instances.offer(instance);
+            return true;
+        }
+    }
+
+    private static final Pool<Deflater> DEFLATERS     = new Pool<>(); // zlib-wrapped
+    private static final Pool<Deflater> RAW_DEFLATERS = new Pool<>();
+    private static final Pool<Inflater> INFLATERS     = new Pool<>(); // zlib-wrapped
+    private static final Pool<Inflater> RAW_INFLATERS = new Pool<>();
+
+    /**
+     * Borrows a deflater using default compression level.
+     * @param nowrap true for raw deflate (no zlib header and checksum).
+     * @return a deflater which must be given back through {@link #release(Deflater, boolean)}.
+     */
+    static Deflater borrowDeflater(boolean nowrap) {
+        Deflater deflater = (nowrap ? RAW_DEFLATERS : DEFLATERS).poll();
+        return deflater != null ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+    }
+
+    /**
+     * Gives back a deflater obtained from {@link #borrowDeflater(boolean)}.
+     * @param deflater deflater
+     * @param nowrap value passed when the deflater was borrowed.
+     */
+    static void release(Deflater deflater, boolean nowrap) {
+        deflater.reset();
+
+        if (!(nowrap ? RAW_DEFLATERS : DEFLATERS).offer(deflater))
+            deflater.end();
+    }
+
+    /**
+     * Borrows an inflater.
+     * @param nowrap true for raw deflate (no zlib header and checksum).
+     * @return an inflater which must be given back through {@link #release(Inflater, boolean)}.
+     */
+    static Inflater borrowInflater(boolean nowrap) {
+        Inflater inflater = (nowrap ? RAW_INFLATERS : INFLATERS).poll();
+        return inflater != null ? inflater : new Inflater(nowrap);
+    }
+
+    /**
+     * Gives back an inflater obtained from {@link #borrowInflater(boolean)}.
+     * @param inflater inflater
+     * @param nowrap value passed when the inflater was borrowed.
+     */
+    static void release(Inflater inflater, boolean nowrap) {
+        inflater.reset();
+
+        if (!(nowrap ? RAW_INFLATERS : INFLATERS).offer(inflater))
+            inflater.end();
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private CodecPool() {}
+    // =========================================================================
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * Entity which compresses the content of a wrapped entity while it is written.
+ * Compressed length is not known in advance, so content is sent chunked.
+ */
+final class CompressingEntity extends HttpEntityWrapper {
+    // CLASS SCOPE =============================================================
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /** Gzip member header: magic, CM = deflate, no flags, no mtime, no extra flags, unknown OS. */
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static void writeIntLE(OutputStream out, long value) throws IOException {
+        out.write((int) (value & 0xff));
+        out.write((int) ((value >> 8) & 0xff));
+        out.write((int) ((value >> 16) & 0xff));
+        out.write((int) ((value >> 24) & 0xff));
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final Compression compression;
+
+    CompressingEntity(HttpEntity wrapped, Compression compression) {
+        super(wrapped);
+
+        if (compression == null || compression == Compression.NONE)
+            throw new IllegalArgumentException("Invalid compression: " + compression);
+
+        this.compression = compression;
+    }
+
+    @Override
+    public Header getContentEncoding() {
+        return new BasicHeader("Content-Encoding", compression.getContentCoding());
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isChunked() {
+        return true;
+    }
+
+    /**
+     * Returns the compressed content.
+     * Content is compressed into memory: blocking clients stream it through {@link #writeTo(OutputStream)} instead.
+     * @return compressed content.
+     * @throws IOException if an I/O error happened.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (out == null)
+            throw new IllegalArgumentException("Null output stream");
+
+        boolean gzip = compression == Compression.GZIP;
+        Deflater deflater = CodecPool.borrowDeflater(gzip);
+
+        try {
+            if (gzip)
+                out.write(GZIP_HEADER);
+
+            // Given deflater is not ended by the stream. Stream is finished, but not closed, to keep 'out' open.
+            DeflaterOutputStream deflaterStream = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+            CRC32 crc = gzip ? new CRC32() : null;
+
+            wrappedEntity.writeTo(gzip ? new CheckedOutputStream(deflaterStream, crc) : deflaterStream);
+            deflaterStream.finish();
+
+            if (gzip) {
+                writeIntLE(out, crc.getValue());
+                writeIntLE(out, deflater.getBytesRead());
+            }
+
+            out.flush();
+        } finally {
+            CodecPool.release(deflater, gzip);
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+    // =========================================================================
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+/** Content coding used to compress request bodies. */
+public enum Compression {
+    /** Bodies are sent as they are. */
+    NONE(null),
+
+    /** Bodies are compressed with gzip (RFC 1952). */
+    GZIP("gzip"),
+
+    /** Bodies are compressed with zlib-wrapped deflate (RFC 1950). */
+    DEFLATE("deflate");
+
+    private final String contentCoding;
+
+    private Compression(String contentCoding) {
+        this.contentCoding = contentCoding;
+    }
+
+    /**
+     * Returns the value of 'Content-Encoding' header for this compression.
+     * @return content coding or null if bodies are not compressed.
+     */
+    public String getContentCoding() {
+        return contentCoding;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+/**
+ * Connection pool settings used by a {@link HttpClient}.
+ * Settings are read when the client is initialized; changing an instance
+ * already passed to a client has no effect on it.
+ */
+public class ConnectionPoolSettings {
+    public static final int DEFAULT_MAX_TOTAL                 = 20;
+    public static final int DEFAULT_MAX_PER_ROUTE             = 2;
+    public static final int DEFAULT_VALIDATE_AFTER_INACTIVITY = 2000;
+
+    private int     maxTotal                 = DEFAULT_MAX_TOTAL;
+    private int     maxPerRoute              = DEFAULT_MAX_PER_ROUTE;
+    private long    connectionTtl            = -1;
+    private int     validateAfterInactivity  = DEFAULT_VALIDATE_AFTER_INACTIVITY;
+    private boolean evictExpiredConnections  = false;
+    private long    maxIdleTime              = -1;
+    private boolean zeroCopyUploads          = false;
+
+    public ConnectionPoolSettings() {}
+
+    /**
+     * Copy constructor.
+     * @param other instance to be copied
+     */
+    public ConnectionPoolSettings(ConnectionPoolSettings other) {
+        if (other == null)
+            throw new IllegalArgumentException("Null settings");
+
+        this.maxTotal                = other.maxTotal;
+        this.maxPerRoute             = other.maxPerRoute;
+        this.connectionTtl           = other.connectionTtl;
+        this.validateAfterInactivity = other.validateAfterInactivity;
+        this.evictExpiredConnections = other.evictExpiredConnections;
+        this.maxIdleTime             = other.maxIdleTime;
+        this.zeroCopyUploads         = other.zeroCopyUploads;
+    }
+
+    /**
+     * Returns the maximum number of connections kept by the pool.
+     * @return the maximum number of connections kept by the pool.
+     */
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    /**
+     * Sets the maximum number of connections kept by the pool.
+     * @param maxTotal maximum number of connections.
+     */
+    public void setMaxTotal(int maxTotal) {
+        if (maxTotal < 1)
+            throw new IllegalArgumentException("Invalid max total: " + maxTotal);
+
+        this.maxTotal = maxTotal;
+    }
+
+    /**
+     * Returns the maximum number of connections per route.
+     * @return the maximum number of connections per route.
+     */
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    /**
+     * Sets the maximum number of connections per route.
+     * @param maxPerRoute maximum number of connections per route.
+     */
+    public void setMaxPerRoute(int maxPerRoute) {
+        if (maxPerRoute < 1)
+            throw new IllegalArgumentException("Invalid max per route: " + maxPerRoute);
+
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    /**
+     * Returns the total time to live of a connection in milliseconds.
+     * @return connection time to live in milliseconds or -1 if connections never expire.
+     */
+    public long getConnectionTtl() {
+        return connectionTtl;
+    }
+
+    /**
+     * Sets the total time to live of a connection.
+     * @param connectionTtl time to live in milliseconds. A negative value means connections never expire.
+     */
+    public void setConnectionTtl(long connectionTtl) {
+        this.connectionTtl = connectionTtl < 0 ? -1 : connectionTtl;
+    }
+
+    /**
+     * Returns the period of inactivity (in milliseconds) after which a pooled connection is validated before being leased.
+     * @return period of inactivity in milliseconds.
+     */
+    public int getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * Sets the period of inactivity after which a pooled connection is validated before being leased.
+     * @param validateAfterInactivity period of inactivity in milliseconds. A negative value disables validation.
+     */
+    public void setValidateAfterInactivity(int validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity < 0 ? -1 : validateAfterInactivity;
+    }
+
+    /**
+     * Returns a boolean indicating if expired connections are evicted from the pool by a background thread.
+     * @return a boolean indicating if expired connections are evicted in background.
+     */
+    public boolean isEvictExpiredConnections() {
+        return evictExpiredConnections;
+    }
+
+    /**
+     * Defines if expired connections are evicted from the pool by a background thread.
+     * @param evictExpiredConnections true to evict expired connections in background.
+     */
+    public void setEvictExpiredConnections(boolean evictExpiredConnections) {
+        this.evictExpiredConnections = evictExpiredConnections;
+    }
+
+    /**
+     * Returns the maximum time (in milliseconds) a connection can be idle before being evicted by a background thread.
+     * @return maximum idle time in milliseconds or -1 if idle connections are not evicted.
+     */
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    /**
+     * Sets the maximum time a connection can be idle before being evicted by a background thread.
+     * @param maxIdleTime maximum idle time in milliseconds. A negative value disables idle eviction.
+     */
+    public void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime < 0 ? -1 : maxIdleTime;
+    }
+
+    /**
+     * Returns a boolean indicating if plain connections are opened on socket channels in order to send file content without intermediate copies.
+     * @return a boolean indicating if zero-copy uploads are enabled.
+     */
+    public boolean isZeroCopyUploads() {
+        return zeroCopyUploads;
+    }
+
+    /**
+     * Defines if plain (non-TLS) connections are opened on socket channels, so bodies of multipart requests with known
+     * length are written straight into the socket (file parts with {@linkplain java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel) zero-copy transfers}).
+     * It is disabled by default, since streams of channel sockets may be slower for regular traffic on older JVMs.
+     * @param zeroCopyUploads true to enable zero-copy uploads.
+     */
+    public void setZeroCopyUploads(boolean zeroCopyUploads) {
+        this.zeroCopyUploads = zeroCopyUploads;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import org.apache.http.pool.PoolStats;
+
+/** Snapshot of connection pool usage. */
+public class ConnectionPoolStats {
+    private final int leased;
+    private final int available;
+    private final int pending;
+    private final int max;
+
+    public ConnectionPoolStats(int leased, int available, int pending, int max) {
+        this.leased = leased;
+        this.available = available;
+        this.pending = pending;
+        this.max = max;
+    }
+
+    ConnectionPoolStats(PoolStats stats) {
+        this(stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax());
+    }
+
+    /**
+     * Returns the number of connections currently in use.
+     * @return the number of connections currently in use.
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * Returns the number of idle connections kept by the pool.
+     * @return the number of idle connections kept by the pool.
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * Returns the number of requests waiting for a connection.
+     * @return the number of requests waiting for a connection.
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * Returns the maximum number of connections allowed.
+     * @return the maximum number of connections allowed.
+     */
+    public int getMax() {
+        return max;
+    }
+
+    ConnectionPoolStats add(ConnectionPoolStats other) {
+        return new ConnectionPoolStats(leased + other.leased, available + other.available, pending + other.pending, max + other.max);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[leased: %d; available: %d; pending: %d; max: %d]", leased, available, pending, max);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import org.apache.http.Header;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Protocol interceptor which attaches cookies from the {@link CookieJar} of a client to outgoing requests
+ * and stores cookies received in responses (including intermediate redirect responses).
+ */
+final class CookieInterceptor implements HttpRequestInterceptor, HttpResponseInterceptor {
+    // CLASS SCOPE =============================================================
+    /**
+     * Returns the path of given request.
+     * @param request request
+     * @return the path of given request.
+     */
+    private static String getPath(HttpRequest request) {
+        URI uri;
+
+        if (request instanceof HttpUriRequest) {
+            uri = ((HttpUriRequest) request).getURI();
+        } else {
+            try {
+                uri = new URI(request.getRequestLine().getUri());
+            } catch (URISyntaxException ex) {
+                return "/";
+            }
+        }
+
+        String path = uri.getRawPath();
+        return path == null || path.isEmpty() ? "/" : path;
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final HttpClient client;
+
+    CookieInterceptor(HttpClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+        CookieJar jar = client.getCookieJar();
+        HttpHost target = HttpClientContext.adapt(context).getTargetHost();
+
+        if (jar == null || target == null)
+            return;
+
+        String cookieHeader = jar.getCookieHeader(target.getHostName(), getPath(request), "https".equalsIgnoreCase(target.getSchemeName()));
+        if (cookieHeader == null)
+            return;
+
+        // Only one 'Cookie' header is allowed
+        Header existing = request.getFirstHeader("Cookie");
+        if (existing != null)
+            cookieHeader = existing.getValue() + "; " + cookieHeader;
+
+        request.setHeader("Cookie", cookieHeader);
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+        CookieJar jar = client.getCookieJar();
+        HttpClientContext clientContext = HttpClientContext.adapt(context);
+        HttpHost target = clientContext.getTargetHost();
+        HttpRequest request = clientContext.getRequest();
+
+        if (jar == null || target == null || request == null)
+            return;
+
+        String path = null;
+        for (Header header : response.getHeaders("Set-Cookie")) {
+            HttpCookie cookie = HttpCookie.parse(header.getValue());
+            if (cookie == null)
+                continue;
+
+            if (path == null)
+                path = getPath(request);
+
+            jar.store(target.getHostName(), path, cookie);
+        }
+    }
+    // =========================================================================
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * Thread-safe cookie store used by a {@link HttpClient}.
+ * Cookies are indexed by domain and, inside a domain, by path. Expired
+ * cookies (according to 'Max-Age' or 'Expires' attributes) are discarded
+ * when found. Public suffixes are not checked.
+ */
+public class CookieJar {
+    // CLASS SCOPE =============================================================
+    /** Orders paths from the longest to the shortest, as required when sending cookies. */
+    private static final Comparator<String> PATH_COMPARATOR = new Comparator<String>() {
+        @Override
+        public int compare(String o1, String o2) {
+            int result = o2.length() - o1.length();
+            return result != 0 ? result : o1.compareTo(o2);
+        }
+    };
+
+    /** Stored cookie. */
+    private static final class Entry {
+        private final HttpCookie cookie;
+        private final boolean    hostOnly;
+        private final long       expiresAt;
+
+        private Entry(HttpCookie cookie, boolean hostOnly, long expiresAt) {
+            this.cookie = cookie;
+            this.hostOnly = hostOnly;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAt >= 0 && expiresAt <= now;
+        }
+    }
+
+    /** Cookies of a single domain, grouped by path. */
+    private static final class DomainCookies {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, Map<String, Entry>> byPath = new TreeMap<>(PATH_COMPARATOR);
+    }
+
+    /**
+     * Returns the default path of a cookie set by a request with given path (RFC 6265, section 5.1.4).
+     * @param requestPath request path
+     * @return default cookie path.
+     */
+    private static String getDefaultPath(String requestPath) {
+        if (requestPath == null || !requestPath.startsWith("/"))
+            return "/";
+
+        int lastSlash = requestPath.lastIndexOf('/');
+        return lastSlash == 0 ? "/" : requestPath.substring(0, lastSlash);
+    }
+
+    /**
+     * Checks if given request path matches given cookie path (RFC 6265, section 5.1.4).
+     * @param requestPath request path
+     * @param cookiePath cookie path
+     * @return a boolean indicating if paths match.
+     */
+    private static boolean pathMatches(String requestPath, String cookiePath) {
+        if (!requestPath.startsWith(cookiePath))
+            return false;
+
+        return requestPath.length() == cookiePath.length()
+            || cookiePath.endsWith("/")
+            || requestPath.charAt(cookiePath.length()) == '/';
+    }
+
+    /**
+     * Checks if given host matches given domain (RFC 6265, section 5.1.3).
+     * @param host lowercase host name
+     * @param domain lowercase domain
+     * @return a boolean indicating if given host matches given domain.
+     */
+    private static boolean domainMatches(String host, String domain) {
+        return host.equals(domain) || (host.endsWith(domain) && host.charAt(host.length() - domain.length() - 1) == '.');
+    }
+
+    private static String getPath(URI uri) {
+        String path = uri.getRawPath();
+        return path == null || path.isEmpty() ? "/" : path;
+    }
+
+    private static boolean isSecure(URI uri) {
+        return "https".equalsIgnoreCase(uri.getScheme());
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final ConcurrentMap<String, DomainCookies> byDomain = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the current time in milliseconds.
+     * @return the current time in milliseconds.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the expiration time of given cookie.
+     * @param cookie cookie
+     * @param now current time
+     * @return expiration time (in milliseconds) or -1 for session cookies.
+     */
+    private long getExpiresAt(HttpCookie cookie, long now) {
+        if (cookie.maxAge >= 0)
+            return now + cookie.maxAge * 1000L;
+
+        if (cookie.expires != null) {
+            Date date = DateUtils.parseDate(cookie.expires);
+            if (date != null)
+                return date.getTime();
+        }
+
+        return -1;
+    }
+
+    /**
+     * Stores a cookie received from given URI.
+     * Cookies whose domain does not match given URI are rejected. A cookie which is already expired removes a stored cookie with the same name, domain and path.
+     * @param uri URI of the request which received the cookie
+     * @param cookie cookie to be stored. Given instance is copied.
+     * @return a boolean indicating if given cookie was accepted.
+     */
+    public boolean store(URI uri, HttpCookie cookie) {
+        if (uri == null)
+            throw new IllegalArgumentException("Null URI");
+
+        if (cookie == null || cookie.name == null)
+            throw new IllegalArgumentException("Null cookie/cookie name");
+
+        if (uri.getHost() == null)
+            return false;
+
+        return store(uri.getHost(), getPath(uri), cookie);
+    }
+
+    /**
+     * Stores a cookie received from given host.
+     * @param host host which sent the cookie
+     * @param requestPath path of the request which received the cookie
+     * @param cookie cookie to be stored
+     * @return a boolean indicating if given cookie was accepted.
+     */
+    boolean store(String host, String requestPath, HttpCookie cookie) {
+        host = host.toLowerCase(Locale.ENGLISH);
+
+        String domain;
+        boolean hostOnly;
+
+        if (cookie.domain == null || cookie.domain.isEmpty()) {
+            domain = host;
+            hostOnly = true;
+        } else {
+            domain = cookie.domain.startsWith(".") ? cookie.domain.substring(1) : cookie.domain;
+            domain = domain.toLowerCase(Locale.ENGLISH);
+            hostOnly = false;
+
+            if (domain.isEmpty() || !domainMatches(host, domain))
+                return false;
+        }
+
+        String path = cookie.path == null || !cookie.path.startsWith("/") ? getDefaultPath(requestPath) : cookie.path;
+
+        HttpCookie storedCookie = new HttpCookie(cookie);
+        storedCookie.domain = domain;
+        storedCookie.path = path;
+
+        long now = currentTimeMillis();
+        Entry entry = new Entry(storedCookie, hostOnly, getExpiresAt(cookie, now));
+
+        DomainCookies domainCookies = byDomain.get(domain);
+        if (domainCookies == null) {
+            if (entry.isExpired(now))
+                return true;
+
+            DomainCookies newCookies = new DomainCookies();
+            domainCookies = byDomain.putIfAbsent(domain, newCookies);
+            if (domainCookies == null)
+                domainCookies = newCookies;
+        }
+
+        domainCookies.lock.lock();
+        try {
+            Map<String, Entry> byName = domainCookies.byPath.get(path);
+
+            if (entry.isExpired(now)) {
+                if (byName != null) {
+                    byName.remove(storedCookie.name);
+                    if (byName.isEmpty())
+                        domainCookies.byPath.remove(path);
+                }
+            } else {
+                if (byName == null) {
+                    byName = new LinkedHashMap<>();
+                    domainCookies.byPath.put(path, byName);
+                }
+
+                byName.put(storedCookie.name, entry);
+            }
+        } finally {
+            domainCookies.lock.unlock();
+        }
+
+        return true;
+    }
+
+    /**
+     * Collects the cookies to be sent to given host and path.
+     * @param host request host
+     * @param requestPath request path
+     * @param secure a boolean indicating if request uses a secure channel
+     * @param result receives matching cookies, from the most specific path to the least specific one
+     */
+    private void collect(String host, String requestPath, boolean secure, List<HttpCookie> result) {
+        if (byDomain.isEmpty())
+            return;
+
+        host = host.toLowerCase(Locale.ENGLISH);
+        long now = currentTimeMillis();
+
+        // Visits the host and each of its parent domains
+        String domain = host;
+        while (true) {
+            DomainCookies domainCookies = byDomain.get(domain);
+
+            if (domainCookies != null) {
+                boolean isHost = domain.length() == host.length();
+
+                domainCookies.lock.lock();
+                try {
+                    Iterator<Map.Entry<String, Map<String, Entry>>> pathIterator = domainCookies.byPath.entrySet().iterator();
+                    while (pathIterator.hasNext()) {
+                        Map.Entry<String, Map<String, Entry>> pathEntry = pathIterator.next();
+                        if (!pathMatches(requestPath, pathEntry.getKey()))
+                            continue;
+
+                        Iterator<Entry> entryIterator = pathEntry.getValue().values().iterator();
+                        while (entryIterator.hasNext()) {
+                            Entry entry = entryIterator.next();
+
+                            if (entry.isExpired(now)) {
+                                entryIterator.remove();
+                                continue;
+                            }
+
+                            if (entry.hostOnly && !isHost)
+                                continue;
+
+                            if (entry.cookie.secure && !secure)
+                                continue;
+
+                            result.add(entry.cookie);
+                        }
+
+                        if (pathEntry.getValue().isEmpty())
+                            pathIterator.remove();
+                    }
+                } finally {
+                    domainCookies.lock.unlock();
+                }
+            }
+
+            int dot = domain.indexOf('.');
+            if (dot < 0)
+                break;
+
+            domain = domain.substring(dot + 1);
+        }
+    }
+
+    /**
+     * Returns the cookies to be sent to given URI.
+     * @param uri request URI
+     * @return copies of matching cookies.
+     */
+    public List<HttpCookie> get(URI uri) {
+        if (uri == null)
+            throw new IllegalArgumentException("Null URI");
+
+        List<HttpCookie> cookies = new ArrayList<>();
+        if (uri.getHost() != null)
+            collect(uri.getHost(), getPath(uri), isSecure(uri), cookies);
+
+        for (int i = 0; i < cookies.size(); i++) {
+            cookies.set(i, new HttpCookie(cookies.get(i)));
+        }
+
+        return cookies;
+    }
+
+    /**
+     * Returns the value of the 'Cookie' header to be sent to given host and path.
+     * @param host request host
+     * @param requestPath request path
+     * @param secure a boolean indicating if request uses a secure channel
+     * @return header value or null if there are no cookies to be sent.
+     */
+    String getCookieHeader(String host, String requestPath, boolean secure) {
+        List<HttpCookie> cookies = new ArrayList<>();
+        collect(host, requestPath, secure, cookies);
+
+        if (cookies.isEmpty())
+            return null;
+
+        StringBuilder sb = new StringBuilder();
+        for (HttpCookie cookie : cookies) {
+            if (sb.length() > 0)
+                sb.append("; ");
+
+            sb.append(cookie.name).append('=').append(cookie.value);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns all stored cookies which are not expired.
+     * @return copies of all stored cookies.
+     */
+    public List<HttpCookie> getCookies() {
+        long now = currentTimeMillis();
+        List<HttpCookie> cookies = new ArrayList<>();
+
+        for (DomainCookies domainCookies : byDomain.values()) {
+            domainCookies.lock.lock();
+            try {
+                for (Map<String, Entry> byName : domainCookies.byPath.values()) {
+                    for (Entry entry : byName.values()) {
+                        if (!entry.isExpired(now))
+                            cookies.add(new HttpCookie(entry.cookie));
+                    }
+                }
+            } finally {
+                domainCookies.lock.unlock();
+            }
+        }
+
+        return cookies;
+    }
+
+    /** Removes all stored cookies. */
+    public void clear() {
+        byDomain.clear();
+    }
+    // =========================================================================
+}
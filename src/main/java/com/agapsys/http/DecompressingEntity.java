@@ -0,0 +1,352 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import com.agapsys.http.utils.IOUtils;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * Entity which decompresses a gzip or deflate encoded entity as it is read.
+ * Inflaters are borrowed from {@link CodecPool} and given back when the content stream is closed or fully read.
+ */
+final class DecompressingEntity extends HttpEntityWrapper {
+    // CLASS SCOPE =============================================================
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private static final int FHCRC    = 2;
+    private static final int FEXTRA   = 4;
+    private static final int FNAME    = 8;
+    private static final int FCOMMENT = 16;
+
+    /**
+     * Returns a boolean indicating if given content coding can be decoded.
+     * @param contentCoding value of 'Content-Encoding' header
+     * @return a boolean indicating if given content coding can be decoded.
+     */
+    static boolean isSupported(String contentCoding) {
+        return isGzip(contentCoding) || contentCoding.equalsIgnoreCase("deflate");
+    }
+
+    /**
+     * Replaces the entity of given response with a decompressing one if response content is gzip/deflate encoded.
+     * Headers describing the encoded content ('Content-Encoding', 'Content-Length' and 'Content-MD5') are removed.
+     * @param response response.
+     */
+    static void decompress(org.apache.http.HttpResponse response) {
+        HttpEntity entity = response.getEntity();
+        Header contentEncoding = response.getFirstHeader("Content-Encoding");
+
+        if (entity == null || entity.getContentLength() == 0 || contentEncoding == null)
+            return;
+
+        String contentCoding = contentEncoding.getValue().trim();
+        if (!isSupported(contentCoding))
+            return;
+
+        response.setEntity(new DecompressingEntity(entity, contentCoding));
+        response.removeHeaders("Content-Encoding");
+        response.removeHeaders("Content-Length");
+        response.removeHeaders("Content-MD5");
+    }
+
+    private static boolean isGzip(String contentCoding) {
+        return contentCoding.equalsIgnoreCase("gzip") || contentCoding.equalsIgnoreCase("x-gzip");
+    }
+
+    /** Inflating stream for gzip (possibly with several members), zlib-wrapped deflate or raw deflate content. */
+    private static final class InflatingInputStream extends InflaterInputStream {
+        private final boolean nowrap;
+        private final boolean gzip;
+        private final CRC32   crc;
+        private boolean eos      = false;
+        private boolean released = false;
+
+        static InflatingInputStream gzip(InputStream in) throws IOException {
+            return new InflatingInputStream(in, true, true);
+        }
+
+        static InflatingInputStream deflate(InputStream in) throws IOException {
+            // Many servers send raw deflate instead of zlib-wrapped content
+            PushbackInputStream pushback = new PushbackInputStream(in, 2);
+            byte[] header = new byte[2];
+            int read = 0;
+
+            while (read < 2) {
+                int n = pushback.read(header, read, 2 - read);
+                if (n < 0)
+                    break;
+
+                read += n;
+            }
+            pushback.unread(header, 0, read);
+
+            int cmf = header[0] & 0xff;
+            int flg = header[1] & 0xff;
+            boolean zlib = read == 2 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+
+            return new InflatingInputStream(pushback, !zlib, false);
+        }
+
+        private InflatingInputStream(InputStream in, boolean nowrap, boolean gzip) throws IOException {
+            super(in, CodecPool.borrowInflater(nowrap), BUFFER_SIZE);
+            this.nowrap = nowrap;
+            this.gzip = gzip;
+            this.crc = gzip ? new CRC32() : null;
+
+            if (gzip) {
+                try {
+                    readHeader(in);
+                } catch (IOException ex) {
+                    release();
+                    throw ex;
+                }
+            }
+        }
+
+        private void release() {
+            if (!released) {
+                released = true;
+                CodecPool.release(inf, nowrap);
+            }
+        }
+
+        /**
+         * Reads a gzip member header.
+         * @return header length.
+         */
+        private int readHeader(InputStream in) throws IOException {
+            CheckedInputStream checked = new CheckedInputStream(in, new CRC32());
+
+            if (readUShort(checked) != GZIP_MAGIC)
+                throw new ZipException("Not in GZIP format");
+
+            if (readUByte(checked) != 8)
+                throw new ZipException("Unsupported compression method");
+
+            int flags = readUByte(checked);
+            skipBytes(checked, 6); // MTIME, XFL and OS
+            int length = 10;
+
+            if ((flags & FEXTRA) == FEXTRA) {
+                int extraLength = readUShort(checked);
+                skipBytes(checked, extraLength);
+                length += extraLength + 2;
+            }
+
+            if ((flags & FNAME) == FNAME) {
+                do {
+                    length++;
+                } while (readUByte(checked) != 0);
+            }
+
+            if ((flags & FCOMMENT) == FCOMMENT) {
+                do {
+                    length++;
+                } while (readUByte(checked) != 0);
+            }
+
+            if ((flags & FHCRC) == FHCRC) {
+                int headerCrc = (int) checked.getChecksum().getValue() & 0xffff;
+                if (readUShort(checked) != headerCrc)
+                    throw new ZipException("Corrupt GZIP header");
+
+                length += 2;
+            }
+
+            crc.reset();
+            return length;
+        }
+
+        /**
+         * Reads a gzip member trailer.
+         * @return true if end of content was reached or false if another member follows.
+         */
+        private boolean readTrailer() throws IOException {
+            InputStream trailerIn = in;
+            int remaining = inf.getRemaining();
+
+            if (remaining > 0) {
+                trailerIn = new SequenceInputStream(new ByteArrayInputStream(buf, len - remaining, remaining), new FilterInputStream(in) {
+                    @Override
+                    public void close() {}
+                });
+            }
+
+            if (readUInt(trailerIn) != crc.getValue() || readUInt(trailerIn) != (inf.getBytesWritten() & 0xffffffffL))
+                throw new ZipException("Corrupt GZIP trailer");
+
+            // Concatenated members
+            if (in.available() > 0 || remaining > 26) {
+                int consumed = 8;
+
+                try {
+                    consumed += readHeader(trailerIn);
+                } catch (IOException ex) {
+                    return true; // Trailing garbage is ignored
+                }
+
+                inf.reset();
+                if (remaining > consumed)
+                    inf.setInput(buf, len - remaining + consumed, remaining - consumed);
+
+                return false;
+            }
+
+            return true;
+        }
+
+        private static long readUInt(InputStream in) throws IOException {
+            long s = readUShort(in);
+            return ((long) readUShort(in) << 16) | s;
+        }
+
+        private static int readUShort(InputStream in) throws IOException {
+            int b = readUByte(in);
+            return (readUByte(in) << 8) | b;
+        }
+
+        private static int readUByte(InputStream in) throws IOException {
+            int b = in.read();
+
+            if (b == -1)
+                throw new EOFException();
+
+            return b;
+        }
+
+        private static void skipBytes(InputStream in, int n) throws IOException {
+            while (n > 0) {
+                readUByte(in);
+                n--;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eos)
+                return -1;
+
+            int n = super.read(b, off, len);
+
+            if (n == -1) {
+                if (!gzip || readTrailer()) {
+                    eos = true;
+                    release();
+                } else {
+                    return read(b, off, len);
+                }
+            } else if (gzip) {
+                crc.update(b, off, n);
+            }
+
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                release();
+            }
+        }
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final boolean gzip;
+    private InputStream content = null;
+
+    /**
+     * Constructor.
+     * @param wrapped encoded entity
+     * @param contentCoding content coding of given entity (see {@link #isSupported(String)}).
+     */
+    DecompressingEntity(HttpEntity wrapped, String contentCoding) {
+        super(wrapped);
+
+        if (!isSupported(contentCoding))
+            throw new IllegalArgumentException("Unsupported content coding: " + contentCoding);
+
+        this.gzip = isGzip(contentCoding);
+    }
+
+    private InputStream createContent() throws IOException {
+        InputStream in = wrappedEntity.getContent();
+
+        try {
+            return gzip ? InflatingInputStream.gzip(in) : InflatingInputStream.deflate(in);
+        } catch (IOException | RuntimeException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns decompressed content.
+     * A streaming entity can be read only once, so the same stream is returned on subsequent calls.
+     * @return decompressed content.
+     * @throws IOException if an I/O error happened.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        if (!wrappedEntity.isStreaming())
+            return createContent();
+
+        if (content == null)
+            content = createContent();
+
+        return content;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (out == null)
+            throw new IllegalArgumentException("Null output stream");
+
+        try (InputStream in = getContent()) {
+            IOUtils.copy(in, out);
+        }
+    }
+
+    @Override
+    public Header getContentEncoding() {
+        return null;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+    // =========================================================================
+}
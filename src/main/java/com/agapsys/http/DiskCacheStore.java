@@ -0,0 +1,747 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import com.agapsys.http.utils.IOUtils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.http.Header;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+
+/**
+ * Persistent store keeping responses in append-only segment files.
+ *
+ * <p>Each stored response is written as a self-describing record (metadata followed by the body) at the end of the
+ * active segment. An append-only index file maps keys (method, URI and 'Vary' values) to record locations and is
+ * compacted whenever the store is opened or a segment is evicted. Bodies are served from read-only mappings of the
+ * segment files, so they are not copied into the heap. When the store grows beyond its maximum size, the oldest
+ * segment is deleted with every response it holds.</p>
+ *
+ * <p>Records are written without holding the store lock (only their space is reserved while holding it), so lookups
+ * do not wait for disk writes.</p>
+ *
+ * <p>A directory can be used by a single store at a time (this is enforced with a file lock).</p>
+ */
+final class DiskCacheStore implements CacheStore, Closeable {
+    // CLASS SCOPE =============================================================
+    private static final int RECORD_MAGIC = 0x48435231; // "HCR1"
+    private static final int INDEX_MAGIC  = 0x48434931; // "HCI1"
+
+    private static final byte OP_PUT    = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private static final String INDEX_FILE     = "index.dat";
+    private static final String LOCK_FILE      = "cache.lock";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private static final long MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /** Bodies smaller than this are read into the heap: a mapping costs at least a page and a kernel map entry. */
+    private static final int MIN_MAPPED_BODY_SIZE = 16 * 1024;
+
+    private static class Segment {
+        final long        id;
+        final Path        path;
+        final FileChannel channel;
+        long size;
+
+        Segment(long id, Path path, FileChannel channel) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.size = channel.size();
+        }
+    }
+
+    private static class Entry {
+        final String         key;
+        final String         indexKey;
+        final Segment        segment;
+        final long           offset;
+        final long           length;
+        final CachedResponse response;
+
+        Entry(String key, Segment segment, long offset, long length, CachedResponse response) {
+            this.key = key;
+            this.indexKey = getIndexKey(key, response.getVaryValues());
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Returns the key identifying a response in the index.
+     * @param key cache key
+     * @param varyValues request header values selected by the response
+     * @return index key.
+     */
+    private static String getIndexKey(String key, Map<String, String> varyValues) {
+        StringBuilder sb = new StringBuilder("GET ").append(key);
+
+        for (Map.Entry<String, String> entry : varyValues.entrySet()) {
+            sb.append('\n').append(entry.getKey());
+
+            if (entry.getValue() != null)
+                sb.append('=').append(entry.getValue());
+        }
+
+        return sb.toString();
+    }
+
+    private static byte[] encodeMetadata(String key, CachedResponse response, long bodyLength) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(RECORD_MAGIC);
+        out.writeUTF(key);
+        out.writeLong(response.getRequestTime());
+        out.writeLong(response.getResponseTime());
+
+        StatusLine statusLine = response.getStatusLine();
+        ProtocolVersion protocol = statusLine.getProtocolVersion();
+        out.writeUTF(protocol.getProtocol());
+        out.writeInt(protocol.getMajor());
+        out.writeInt(protocol.getMinor());
+        out.writeInt(statusLine.getStatusCode());
+        out.writeUTF(statusLine.getReasonPhrase() == null ? "" : statusLine.getReasonPhrase());
+
+        Header[] headers = response.getHeaders();
+        out.writeInt(headers.length);
+        for (Header header : headers) {
+            out.writeUTF(header.getName());
+            out.writeUTF(header.getValue());
+        }
+
+        Map<String, String> varyValues = response.getVaryValues();
+        out.writeInt(varyValues.size());
+        for (Map.Entry<String, String> entry : varyValues.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeBoolean(entry.getValue() != null);
+            if (entry.getValue() != null)
+                out.writeUTF(entry.getValue());
+        }
+
+        out.writeLong(bodyLength);
+        out.flush();
+        return bytes.toByteArray();
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final Path directory;
+    private final long maxSize;
+    private final long segmentSize;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final FileChannel            lockChannel;
+    private final FileLock               fileLock;
+
+    private final TreeMap<Long, Segment>         segments = new TreeMap<>();
+    private final HashMap<String, List<Entry>>   entries  = new HashMap<>();
+    private Segment          activeSegment;
+    private DataOutputStream indexOut;
+    private int              indexRecords;
+    private int              entryCount;
+    private long             size;
+    private boolean          closed;
+
+    /**
+     * Constructor.
+     * Opens (or creates) the store held by given directory.
+     * @param directory directory holding the store files
+     * @param maxSize maximum number of bytes held by the store
+     * @throws IOException if the store could not be opened or it is being used by another store.
+     */
+    DiskCacheStore(Path directory, long maxSize) throws IOException {
+        if (directory == null)
+            throw new IllegalArgumentException("Null directory");
+
+        if (maxSize < 1)
+            throw new IllegalArgumentException("Invalid max size: " + maxSize);
+
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.segmentSize = Math.max(1, Math.min(MAX_SEGMENT_SIZE, maxSize / 8));
+
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+        FileLock acquiredLock = null;
+        try {
+            acquiredLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            // Directory is already used by a store of this process
+        } catch (IOException ex) {
+            lockChannel.close();
+            throw ex;
+        }
+
+        if (acquiredLock == null) {
+            lockChannel.close();
+            throw new IOException("Cache directory is in use: " + directory);
+        }
+        fileLock = acquiredLock;
+
+        try {
+            load();
+        } catch (IOException | RuntimeException ex) {
+            closeQuietly();
+            throw ex;
+        }
+    }
+
+    private void load() throws IOException {
+        // Segments...
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String fileName = path.getFileName().toString();
+                long id;
+
+                try {
+                    id = Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException ex) {
+                    continue;
+                }
+
+                Segment segment = new Segment(id, path, FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+                segments.put(id, segment);
+                size += segment.size;
+            }
+        }
+
+        // Index (later records override earlier ones; a torn tail is ignored)...
+        Map<String, long[]> locations = new LinkedHashMap<>();
+        Path indexPath = directory.resolve(INDEX_FILE);
+
+        if (Files.exists(indexPath)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+                if (in.readInt() == INDEX_MAGIC) {
+                    while (true) {
+                        byte op = in.readByte();
+                        String indexKey = in.readUTF();
+
+                        if (op == OP_PUT) {
+                            locations.remove(indexKey); // Keeps insertion order meaningful
+                            locations.put(indexKey, new long[] {in.readLong(), in.readLong(), in.readLong()});
+                        } else if (op == OP_REMOVE) {
+                            locations.remove(indexKey);
+                        } else {
+                            break;
+                        }
+                    }
+                }
+            } catch (EOFException ignored) {}
+        }
+
+        for (Map.Entry<String, long[]> location : locations.entrySet()) {
+            Segment segment = segments.get(location.getValue()[0]);
+            if (segment == null)
+                continue;
+
+            try {
+                Entry entry = readEntry(segment, location.getValue()[1], location.getValue()[2]);
+                if (entry.indexKey.equals(location.getKey()))
+                    addEntry(entry);
+            } catch (IOException | RuntimeException ignored) {
+                // Corrupted or truncated record: response is dropped
+            }
+        }
+
+        // Segments not referenced by the index hold no live data
+        for (Iterator<Segment> iterator = segments.values().iterator(); iterator.hasNext();) {
+            Segment segment = iterator.next();
+
+            if (!isReferenced(segment)) {
+                iterator.remove();
+                deleteSegment(segment);
+            }
+        }
+
+        activeSegment = segments.isEmpty() || segments.lastEntry().getValue().size >= segmentSize ? newSegment() : segments.lastEntry().getValue();
+        writeIndex();
+        evict();
+    }
+
+    private boolean isReferenced(Segment segment) {
+        for (List<Entry> variants : entries.values()) {
+            for (Entry entry : variants) {
+                if (entry.segment == segment)
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    private Entry readEntry(Segment segment, long offset, long length) throws IOException {
+        if (offset < 0 || length <= 0 || offset + length > segment.size)
+            throw new IOException("Invalid record location");
+
+        ByteBuffer record;
+        if (length < MIN_MAPPED_BODY_SIZE) {
+            record = ByteBuffer.allocate((int) length);
+            while (record.hasRemaining()) {
+                if (segment.channel.read(record, offset + record.position()) < 0)
+                    throw new EOFException();
+            }
+            ((Buffer) record).flip();
+        } else {
+            record = segment.channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+
+        DataInputStream in = new DataInputStream(IOUtils.newInputStream(record));
+        if (in.readInt() != RECORD_MAGIC)
+            throw new IOException("Invalid record");
+
+        String key = in.readUTF();
+        long requestTime = in.readLong();
+        long responseTime = in.readLong();
+
+        ProtocolVersion protocol = new ProtocolVersion(in.readUTF(), in.readInt(), in.readInt());
+        int statusCode = in.readInt();
+        String reasonPhrase = in.readUTF();
+        StatusLine statusLine = new BasicStatusLine(protocol, statusCode, reasonPhrase.isEmpty() ? null : reasonPhrase);
+
+        Header[] headers = new Header[in.readInt()];
+        for (int i = 0; i < headers.length; i++) {
+            headers[i] = new BasicHeader(in.readUTF(), in.readUTF());
+        }
+
+        int varyCount = in.readInt();
+        Map<String, String> varyValues = new LinkedHashMap<>();
+        for (int i = 0; i < varyCount; i++) {
+            String name = in.readUTF();
+            varyValues.put(name, in.readBoolean() ? in.readUTF() : null);
+        }
+
+        long bodyLength = in.readLong();
+        if (bodyLength != record.remaining())
+            throw new IOException("Invalid record");
+
+        ByteBuffer body = record.slice();
+        CachedResponse response = new CachedResponse(statusLine, headers, body, requestTime, responseTime, varyValues);
+        return new Entry(key, segment, offset, length, response);
+    }
+
+    private Segment newSegment() throws IOException {
+        long id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Path path = directory.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+
+        Segment segment = new Segment(id, path, FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void deleteSegment(Segment segment) {
+        size -= segment.size;
+
+        try {
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+        } catch (IOException ignored) {
+            // File still mapped (some platforms do not allow deletion): it will be removed when the store is opened again
+        }
+    }
+
+    /** Rewrites the index with live entries only. */
+    private void writeIndex() throws IOException {
+        Path indexPath = directory.resolve(INDEX_FILE);
+        Path tmpPath = directory.resolve(INDEX_FILE + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
+            out.writeInt(INDEX_MAGIC);
+
+            for (List<Entry> variants : entries.values()) {
+                for (Entry entry : variants) {
+                    writeIndexRecord(out, OP_PUT, entry);
+                }
+            }
+        }
+
+        if (indexOut != null)
+            indexOut.close();
+
+        try {
+            try {
+                Files.move(tmpPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmpPath, indexPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            indexRecords = entryCount;
+        } finally {
+            OutputStream indexStream = Files.newOutputStream(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            indexOut = new DataOutputStream(new BufferedOutputStream(indexStream));
+        }
+    }
+
+    private void writeIndexRecord(DataOutputStream out, byte op, Entry entry) throws IOException {
+        out.writeByte(op);
+        out.writeUTF(entry.indexKey);
+
+        if (op == OP_PUT) {
+            out.writeLong(entry.segment.id);
+            out.writeLong(entry.offset);
+            out.writeLong(entry.length);
+        }
+    }
+
+    /** Appends a record to the index. */
+    private void appendIndex(byte op, Entry entry) throws IOException {
+        writeIndexRecord(indexOut, op, entry);
+        indexOut.flush();
+        indexRecords++;
+    }
+
+    /** Rewrites the index when most of its records are obsolete. */
+    private void compactIndex() throws IOException {
+        if (indexRecords > 2 * entryCount + 64)
+            writeIndex();
+    }
+
+    /** Adds given entry, replacing the variant with the same index key (if any). */
+    private void addEntry(Entry entry) {
+        List<Entry> variants = entries.get(entry.key);
+
+        if (variants == null) {
+            variants = new ArrayList<>(1);
+            entries.put(entry.key, variants);
+        }
+
+        for (int i = 0; i < variants.size(); i++) {
+            if (variants.get(i).indexKey.equals(entry.indexKey)) {
+                variants.set(i, entry);
+                return;
+            }
+        }
+
+        variants.add(entry);
+        entryCount++;
+    }
+
+    /** Removes oldest segments until the store fits its maximum size. */
+    private void evict() throws IOException {
+        boolean evicted = false;
+
+        while (size > maxSize && !segments.isEmpty()) {
+            Segment oldest = segments.firstEntry().getValue();
+
+            if (oldest == activeSegment)
+                activeSegment = newSegment();
+
+            segments.remove(oldest.id);
+
+            for (Iterator<List<Entry>> iterator = entries.values().iterator(); iterator.hasNext();) {
+                List<Entry> variants = iterator.next();
+
+                for (Iterator<Entry> variantIterator = variants.iterator(); variantIterator.hasNext();) {
+                    if (variantIterator.next().segment == oldest) {
+                        variantIterator.remove();
+                        entryCount--;
+                    }
+                }
+
+                if (variants.isEmpty())
+                    iterator.remove();
+            }
+
+            deleteSegment(oldest);
+            evicted = true;
+        }
+
+        if (evicted)
+            writeIndex();
+    }
+
+    private void closeQuietly() {
+        for (Segment segment : segments.values()) {
+            try {
+                segment.channel.close();
+            } catch (IOException ignored) {}
+        }
+
+        try {
+            if (indexOut != null)
+                indexOut.close();
+        } catch (IOException ignored) {}
+
+        try {
+            fileLock.release();
+        } catch (IOException ignored) {}
+
+        try {
+            lockChannel.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Returns the directory holding store files.
+     * @return the directory holding store files.
+     */
+    Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public CachedResponse get(String key, HttpRequest request, List<HttpHeader> defaultHeaders) {
+        lock.readLock().lock();
+        try {
+            if (closed)
+                return null;
+
+            List<Entry> variants = entries.get(key);
+            if (variants == null)
+                return null;
+
+            for (Entry entry : variants) {
+                if (entry.response.matches(request, defaultHeaders))
+                    return entry.response;
+            }
+
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(String key, CachedResponse response) {
+        ByteBuffer body = response.getBody();
+        ByteBuffer metadata;
+
+        try {
+            metadata = ByteBuffer.wrap(encodeMetadata(key, response, body.remaining()));
+        } catch (IOException ex) {
+            return;
+        }
+
+        long length = metadata.remaining() + body.remaining();
+        Segment segment;
+        long offset;
+
+        // Space is reserved while holding the lock, but the record is written (and read back) without it,
+        // so lookups never wait for record I/O
+        lock.writeLock().lock();
+        try {
+            if (closed)
+                return;
+
+            segment = activeSegment;
+            offset = segment.size;
+            segment.size += length;
+            size += length;
+
+            if (segment.size >= segmentSize) {
+                try {
+                    activeSegment = newSegment();
+                } catch (IOException ignored) {
+                    // Current segment keeps growing
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Entry entry;
+        try {
+            write(segment.channel, metadata, offset);
+            write(segment.channel, body, offset + metadata.capacity());
+
+            // Reading the record back replaces the heap body with a mapping of the segment
+            entry = readEntry(segment, offset, length);
+        } catch (IOException ex) {
+            discard(segment, offset, length);
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (closed || segments.get(segment.id) != segment)
+                return; // Segment was evicted while the record was written
+
+            addEntry(entry);
+
+            try {
+                appendIndex(OP_PUT, entry);
+                compactIndex();
+                evict();
+            } catch (IOException ignored) {
+                // Entry is kept in memory but may be lost when the store is reopened
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Writes given buffer at given position. */
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Gives back the space reserved for a record which could not be written.
+     * Store is best-effort: space is reclaimed only if no record was reserved after it, otherwise it is left unused
+     * until its segment is evicted (records are located through the index, so it is never read).
+     */
+    private void discard(Segment segment, long offset, long length) {
+        lock.writeLock().lock();
+        try {
+            if (closed || segments.get(segment.id) != segment || segment.size != offset + length)
+                return;
+
+            segment.size = offset;
+            size -= length;
+
+            try {
+                segment.channel.truncate(offset);
+            } catch (IOException ignored) {}
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        lock.writeLock().lock();
+        try {
+            if (closed)
+                return;
+
+            List<Entry> variants = entries.remove(key);
+            if (variants == null)
+                return;
+
+            entryCount -= variants.size();
+
+            try {
+                for (Entry entry : variants) {
+                    appendIndex(OP_REMOVE, entry);
+                }
+                compactIndex();
+            } catch (IOException ignored) {
+                // Removal is applied to the index on next compaction
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            if (closed)
+                return;
+
+            entries.clear();
+            entryCount = 0;
+
+            for (Segment segment : segments.values()) {
+                deleteSegment(segment);
+            }
+            segments.clear();
+
+            try {
+                activeSegment = newSegment();
+                writeIndex();
+            } catch (IOException ignored) {}
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long getSize() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getEntryCount() {
+        lock.readLock().lock();
+        try {
+            return entryCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes pending data and releases store files.
+     * Responses already served remain readable.
+     * @throws IOException if an I/O error happened.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed)
+                return;
+
+            closed = true;
+            activeSegment.channel.force(false);
+            indexOut.flush();
+        } finally {
+            closeQuietly();
+            lock.writeLock().unlock();
+        }
+    }
+    // =========================================================================
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Persistent {@link ResponseCache} which keeps responses in memory-mapped segment files.
+ * Cached responses survive process restarts and their content is read straight from the mapped files.
+ * When the cache is full, the oldest segment is discarded with every response it holds.
+ * A directory can be used by a single cache at a time.
+ */
+public class DiskResponseCache extends ResponseCache implements Closeable {
+    private final DiskCacheStore store;
+
+    /**
+     * Constructor.
+     * Opens (or creates) the cache held by given directory.
+     * @param directory directory holding the cache files
+     * @param maxSize maximum number of bytes held by the cache. Entries are limited to 1/8 of this value by default.
+     * @throws IOException if the cache could not be opened or its directory is being used by another cache.
+     */
+    public DiskResponseCache(Path directory, long maxSize) throws IOException {
+        this(new DiskCacheStore(directory, maxSize));
+    }
+
+    private DiskResponseCache(DiskCacheStore store) {
+        super(store);
+        this.store = store;
+    }
+
+    /**
+     * Returns the directory holding the cache files.
+     * @return the directory holding the cache files.
+     */
+    public Path getDirectory() {
+        return store.getDirectory();
+    }
+
+    /**
+     * Closes this cache, releasing its files.
+     * Responses already served remain readable. A closed cache does not serve nor store responses.
+     * @throws IOException if an I/O error happened.
+     */
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+}
@@ -18,12 +18,18 @@ package com.agapsys.http;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
 
 public abstract class EntityRequest extends HttpRequest {
+    private volatile Compression compression = null;
     
     public EntityRequest(String uri, Object...uriParams) {
         super(uri, uriParams);
     }
+
+    public EntityRequest(UriTemplate uriTemplate, Object...uriParams) {
+        super(uriTemplate, uriParams);
+    }
     
     public EntityRequest() {}
     
@@ -33,8 +39,31 @@ public abstract class EntityRequest extends HttpRequest {
      */
     protected abstract HttpEntity getEntity();
     
+    /**
+     * Returns the compression applied to the body of this request.
+     * @return the compression applied to the body of this request or null if client setting is used.
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+    
+    /**
+     * Sets the compression applied to the body of this request.
+     * Bodies smaller than {@linkplain HttpClient#getCompressionThreshold() client threshold} are not compressed.
+     * @param compression compression or null to use client setting (see {@link HttpClient#setCompression(Compression)}).
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    @Override
+    Compression getBodyCompression() {
+        return compression;
+    }
+    
     @Override
-    protected void beforeSend() {
-        ((HttpEntityEnclosingRequestBase)getCoreRequest()).setEntity(getEntity());
+    protected void beforeSend(HttpRequestBase wireRequest) {
+        super.beforeSend(wireRequest);
+        ((HttpEntityEnclosingRequestBase)wireRequest).setEntity(getEntity());
     }
 }
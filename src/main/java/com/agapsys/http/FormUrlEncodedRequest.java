@@ -16,15 +16,15 @@
 
 package com.agapsys.http;
 
-import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.ContentType;
 import org.apache.http.message.BasicNameValuePair;
 
 public abstract class FormUrlEncodedRequest extends EntityRequest {
@@ -35,6 +35,10 @@ public abstract class FormUrlEncodedRequest extends EntityRequest {
             super(charset, uri, uriParams);
         }
 
+        public FormUrlEncodedPost(String charset, UriTemplate uriTemplate, Object...uriParams) {
+            super(charset, uriTemplate, uriParams);
+        }
+
         public FormUrlEncodedPost(String charset) {
             super(charset);
         }
@@ -51,6 +55,10 @@ public abstract class FormUrlEncodedRequest extends EntityRequest {
             super(charset, uri, uriParams);
         }
 
+        public FormUrlEncodedPut(String charset, UriTemplate uriTemplate, Object...uriParams) {
+            super(charset, uriTemplate, uriParams);
+        }
+
         public FormUrlEncodedPut(String charset) {
             super(charset);
         }
@@ -67,6 +75,10 @@ public abstract class FormUrlEncodedRequest extends EntityRequest {
             super(charset, uri, uriParams);
         }
 
+        public FormUrlEncodedPatch(String charset, UriTemplate uriTemplate, Object...uriParams) {
+            super(charset, uriTemplate, uriParams);
+        }
+
         public FormUrlEncodedPatch(String charset) {
             super(charset);
         }
@@ -89,6 +101,14 @@ public abstract class FormUrlEncodedRequest extends EntityRequest {
         
         this.charset = charset;
     }
+
+    public FormUrlEncodedRequest(String charset, UriTemplate uriTemplate, Object...uriParams) {
+        super(uriTemplate, uriParams);
+        if (charset == null || charset.trim().isEmpty())
+            throw new IllegalArgumentException("Null/Empty charset");
+        
+        this.charset = charset;
+    }
     
     public FormUrlEncodedRequest(String charset) {
         if (charset == null || charset.trim().isEmpty())
@@ -123,11 +143,8 @@ public abstract class FormUrlEncodedRequest extends EntityRequest {
             urlParameters.add(new BasicNameValuePair(entry.getKey(), entry.getValue()));
         }
         
-        try {
-            return new UrlEncodedFormEntity(urlParameters, charset);
-        } catch (UnsupportedEncodingException ex) {
-            throw new RuntimeException(ex);
-        }
+        // Same content as UrlEncodedFormEntity, encoded through pooled buffers
+        return TextEntity.create(URLEncodedUtils.format(urlParameters, charset), ContentType.create(URLEncodedUtils.CONTENT_TYPE, charset));
     }
     // =========================================================================
 }
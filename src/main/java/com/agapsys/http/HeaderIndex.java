@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable, case-insensitive multimap of headers.
+ * Lookups use an open-addressing table built once, and neither lowercase names nor allocate.
+ */
+final class HeaderIndex {
+    // CLASS SCOPE =============================================================
+    /**
+     * Returns a case-insensitive hash of given header name.
+     * Header names are ASCII, so only 'A'-'Z' are folded.
+     * @param name header name
+     * @return case-insensitive hash of given name.
+     */
+    private static int hash(String name) {
+        int h = 0;
+
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z')
+                c += 'a' - 'A';
+
+            h = 31 * h + c;
+        }
+
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSize(int entries) {
+        int size = 4;
+        while (size < entries * 2) {
+            size <<= 1;
+        }
+
+        return size;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<HttpHeader>[] newValueTable(int size) {
+        return new List[size];
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final List<HttpHeader> headers;
+
+    private final String[]           names;
+    private final List<HttpHeader>[] values;
+    private final int                mask;
+
+    HeaderIndex(org.apache.http.Header[] wrappedHeaders) {
+        HttpHeader[] all = new HttpHeader[wrappedHeaders.length];
+        for (int i = 0; i < wrappedHeaders.length; i++) {
+            all[i] = new HttpHeader(wrappedHeaders[i]);
+        }
+        headers = Collections.unmodifiableList(Arrays.asList(all));
+
+        int size = tableSize(all.length);
+        mask = size - 1;
+        names = new String[size];
+        values = newValueTable(size);
+
+        // First pass: assign slots and count headers per slot
+        int[] slots = new int[all.length];
+        int[] counts = new int[size];
+        for (int i = 0; i < all.length; i++) {
+            int slot = findSlot(all[i].getName());
+
+            if (names[slot] == null)
+                names[slot] = all[i].getName();
+
+            slots[i] = slot;
+            counts[slot]++;
+        }
+
+        // Second pass: group headers (keeping their order) per slot
+        HttpHeader[][] grouped = new HttpHeader[size][];
+        int[] filled = new int[size];
+        for (int i = 0; i < all.length; i++) {
+            int slot = slots[i];
+
+            if (grouped[slot] == null)
+                grouped[slot] = new HttpHeader[counts[slot]];
+
+            grouped[slot][filled[slot]++] = all[i];
+        }
+
+        for (int slot = 0; slot < size; slot++) {
+            if (grouped[slot] != null)
+                values[slot] = Collections.unmodifiableList(Arrays.asList(grouped[slot]));
+        }
+    }
+
+    /**
+     * Returns the slot of given name: either the slot holding it or the empty slot where it would be stored.
+     * @param name header name
+     * @return slot of given name.
+     */
+    private int findSlot(String name) {
+        int slot = hash(name) & mask;
+
+        while (names[slot] != null && !names[slot].equalsIgnoreCase(name)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Returns all headers in their original order.
+     * @return unmodifiable list of all headers.
+     */
+    List<HttpHeader> getAll() {
+        return headers;
+    }
+
+    /**
+     * Returns all headers with given name (case-insensitive), in their original order.
+     * @param name header name
+     * @return unmodifiable list of headers with given name. If there is no such header (or name is null), an empty list is returned.
+     */
+    List<HttpHeader> get(String name) {
+        if (name == null)
+            return Collections.emptyList();
+
+        List<HttpHeader> list = values[findSlot(name)];
+        return list == null ? Collections.<HttpHeader>emptyList() : list;
+    }
+
+    /**
+     * Returns the first header with given name (case-insensitive).
+     * @param name header name
+     * @return first header with given name or null if there is no such header (or name is null).
+     */
+    HttpHeader getFirst(String name) {
+        if (name == null)
+            return null;
+
+        List<HttpHeader> list = values[findSlot(name)];
+        return list == null ? null : list.get(0);
+    }
+    // =========================================================================
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * Single attempt of a request which may be hedged.
+ * The primary copy is sent on a thread of the client executor. If no response arrives within the hedging delay, a
+ * second copy is sent. The first response wins and the other copy is aborted (a response arriving late is closed).
+ */
+final class HedgedExchange {
+    // CLASS SCOPE =============================================================
+    private static void closeQuietly(HttpResponse response) {
+        try {
+            response.close();
+        } catch (IOException ignored) {}
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final HttpClient        client;
+    private final HttpRequest       request;
+    private final List<HttpHeader>  extraHeaders;
+    private final long              delayMicros;
+
+    private final ReentrantLock         lock         = new ReentrantLock();
+    private final Condition             changed      = lock.newCondition();
+    private final List<HttpRequestBase> wireRequests = new ArrayList<>(2);
+
+    private HttpResponse    winner      = null;
+    private HttpRequestBase winnerWire  = null;
+    private boolean         decided     = false;
+    private Exception       error       = null;
+    private int             failures    = 0;
+
+    /**
+     * Constructor.
+     * @param client client sending the request
+     * @param request request
+     * @param extraHeaders headers sent after request headers
+     * @param delayMicros delay (in microseconds) before sending the second copy.
+     */
+    HedgedExchange(HttpClient client, HttpRequest request, List<HttpHeader> extraHeaders, long delayMicros) {
+        this.client = client;
+        this.request = request;
+        this.extraHeaders = extraHeaders;
+        this.delayMicros = delayMicros;
+    }
+
+    /**
+     * Sends given request (and a hedged copy, if needed).
+     * @param wireRequest primary copy
+     * @return first received response.
+     * @throws IOException if all copies failed or calling thread was interrupted.
+     */
+    HttpResponse execute(HttpRequestBase wireRequest) throws IOException {
+        lock.lock();
+        try {
+            start(wireRequest);
+
+            long nanos = TimeUnit.MICROSECONDS.toNanos(delayMicros);
+            while (!decided && failures < wireRequests.size() && nanos > 0) {
+                nanos = changed.awaitNanos(nanos);
+            }
+
+            if (!decided && failures < wireRequests.size())
+                start(client.createWireRequest(request, extraHeaders));
+
+            while (!decided && failures < wireRequests.size()) {
+                changed.await();
+            }
+
+            if (!decided) {
+                decided = true;
+
+                if (error instanceof IOException)
+                    throw (IOException) error;
+
+                if (error instanceof RuntimeException)
+                    throw (RuntimeException) error;
+
+                throw new IOException(error);
+            }
+
+            for (HttpRequestBase wire : wireRequests) {
+                if (wire != winnerWire)
+                    wire.abort();
+            }
+
+            return winner;
+        } catch (InterruptedException ex) {
+            decided = true;
+
+            for (HttpRequestBase wire : wireRequests) {
+                wire.abort();
+            }
+
+            if (winner != null)
+                closeQuietly(winner);
+
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for response");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Sends given copy. Must be called while holding the lock. */
+    private void start(final HttpRequestBase wireRequest) {
+        wireRequests.add(wireRequest);
+
+        try {
+            client.getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    send(wireRequest);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            failures++;
+            if (error == null)
+                error = ex;
+        }
+    }
+
+    private void send(HttpRequestBase wireRequest) {
+        HttpResponse response = null;
+        Exception failure = null;
+
+        try {
+            response = client.send(request, wireRequest);
+        } catch (Exception ex) {
+            failure = ex;
+        }
+
+        boolean discard = false;
+
+        lock.lock();
+        try {
+            if (response != null && !decided) {
+                decided = true;
+                winner = response;
+                winnerWire = wireRequest;
+            } else if (response != null) {
+                discard = true;
+            } else {
+                failures++;
+                if (error == null)
+                    error = failure;
+            }
+
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        if (discard)
+            closeQuietly(response);
+    }
+    // =========================================================================
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+/**
+ * Hedging policy used by a {@link HttpClient}.
+ * When a GET request takes longer than a percentile of the recent latencies of its host, a second copy is sent and
+ * the first response wins (the other attempt is aborted). Only the slowest requests are duplicated, so tail latency is
+ * reduced at the cost of a small amount of extra load.
+ * Settings are read when the policy is passed to a client; changing an instance already passed to a client has no
+ * effect on it.
+ */
+public class HedgingPolicy {
+    public static final double DEFAULT_PERCENTILE  = 95.0;
+    public static final long   DEFAULT_MIN_DELAY   = 5;
+    public static final int    DEFAULT_MIN_SAMPLES = 20;
+
+    private double percentile = DEFAULT_PERCENTILE;
+    private long   minDelay   = DEFAULT_MIN_DELAY;
+    private int    minSamples = DEFAULT_MIN_SAMPLES;
+
+    public HedgingPolicy() {}
+
+    /**
+     * Copy constructor.
+     * @param other instance to be copied
+     */
+    public HedgingPolicy(HedgingPolicy other) {
+        if (other == null)
+            throw new IllegalArgumentException("Null policy");
+
+        this.percentile = other.percentile;
+        this.minDelay   = other.minDelay;
+        this.minSamples = other.minSamples;
+    }
+
+    /**
+     * Returns the latency percentile after which a hedged request is sent.
+     * @return latency percentile (0 - 100).
+     */
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * Sets the latency percentile after which a hedged request is sent.
+     * @param percentile latency percentile (greater than 0 and up to 100).
+     */
+    public void setPercentile(double percentile) {
+        if (!(percentile > 0 && percentile <= 100))
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+
+        this.percentile = percentile;
+    }
+
+    /**
+     * Returns the minimum delay (in milliseconds) before a hedged request is sent.
+     * @return the minimum delay before a hedged request is sent.
+     */
+    public long getMinDelay() {
+        return minDelay;
+    }
+
+    /**
+     * Sets the minimum delay before a hedged request is sent.
+     * @param minDelay minimum delay in milliseconds.
+     */
+    public void setMinDelay(long minDelay) {
+        if (minDelay < 0)
+            throw new IllegalArgumentException("Invalid min delay: " + minDelay);
+
+        this.minDelay = minDelay;
+    }
+
+    /**
+     * Returns the number of latency samples of a host needed before its requests are hedged.
+     * @return the number of latency samples needed before requests are hedged.
+     */
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * Sets the number of latency samples of a host needed before its requests are hedged.
+     * @param minSamples number of latency samples.
+     */
+    public void setMinSamples(int minSamples) {
+        if (minSamples < 1)
+            throw new IllegalArgumentException("Invalid min samples: " + minSamples);
+
+        this.minSamples = minSamples;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+/**
+ * Immutable snapshot of a latency histogram.
+ * Latencies are kept in logarithmic buckets (four buckets per power of two), so reported values are resolved within 25%.
+ * All values are expressed in microseconds.
+ */
+public final class HistogramSnapshot {
+    private final long[] counts;
+    private final long   count;
+    private final long   sum;
+
+    HistogramSnapshot(long[] counts, long sum) {
+        long count = 0;
+
+        for (long bucketCount : counts) {
+            count += bucketCount;
+        }
+
+        this.counts = counts;
+        this.count  = count;
+        this.sum    = sum;
+    }
+
+    /**
+     * Returns the number of recorded samples.
+     * @return the number of recorded samples.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the sum of recorded latencies.
+     * @return the sum of recorded latencies in microseconds.
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the mean of recorded latencies.
+     * @return the mean of recorded latencies in microseconds or 0 if there are no samples.
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the given percentile of recorded latencies.
+     * @param percentile percentile (0 - 100)
+     * @return percentile upper bound in microseconds or -1 if there are no samples.
+     */
+    public long getPercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100))
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+
+        if (count == 0)
+            return -1;
+
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+
+            if (seen >= rank)
+                return LatencyHistogram.getUpperBound(i);
+        }
+
+        return LatencyHistogram.getUpperBound(counts.length - 1);
+    }
+
+    /**
+     * Returns the maximum recorded latency.
+     * @return upper bound of the maximum recorded latency in microseconds or -1 if there are no samples.
+     */
+    public long getMax() {
+        return getPercentile(100);
+    }
+
+    /**
+     * Returns the number of buckets of this histogram.
+     * @return the number of buckets of this histogram.
+     */
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    /**
+     * Returns the upper bound (exclusive) of given bucket.
+     * @param bucket bucket index
+     * @return the upper bound of given bucket in microseconds.
+     */
+    public long getBucketUpperBound(int bucket) {
+        if (bucket < 0 || bucket >= counts.length)
+            throw new IllegalArgumentException("Invalid bucket: " + bucket);
+
+        return LatencyHistogram.getUpperBound(bucket);
+    }
+
+    /**
+     * Returns the number of samples recorded into given bucket.
+     * @param bucket bucket index
+     * @return the number of samples recorded into given bucket.
+     */
+    public long getBucketSamples(int bucket) {
+        if (bucket < 0 || bucket >= counts.length)
+            throw new IllegalArgumentException("Invalid bucket: " + bucket);
+
+        return counts[bucket];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[count: %d; mean: %.1f; p50: %d; p99: %d; max: %d]", count, getMean(), getPercentile(50), getPercentile(99), getMax());
+    }
+}
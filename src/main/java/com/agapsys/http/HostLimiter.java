@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Admission control of a single host: adaptive concurrency limit plus circuit breaker (see {@link AdmissionPolicy}).
+ * State is updated without locks, so concurrent completions may interleave; the limit is an estimate and does not
+ * need to be exact.
+ */
+final class HostLimiter {
+    // CLASS SCOPE =============================================================
+    /** Number of responses after which the baseline latency is replaced by the lowest latency of the window. */
+    private static final int BASELINE_WINDOW = 100;
+
+    private enum Circuit {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final class BreakerState {
+        final Circuit circuit;
+        final long    since; // Nano time of last transition
+
+        BreakerState(Circuit circuit, long since) {
+            this.circuit = circuit;
+            this.since = since;
+        }
+    }
+
+    private static final BreakerState CLOSED = new BreakerState(Circuit.CLOSED, 0);
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final String host;
+    private final int    minLimit;
+    private final int    maxLimit;
+    private final double latencyTolerance;
+    private final double backoffRatio;
+    private final int    failureThreshold;
+    private final long   openNanos;
+
+    private final AtomicInteger                 inFlight            = new AtomicInteger();
+    private final AtomicLong                    limitBits;
+    private final AtomicInteger                 consecutiveFailures = new AtomicInteger();
+    private final AtomicReference<BreakerState> breaker             = new AtomicReference<>(CLOSED);
+    private final AtomicLong                    baselineRtt         = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong                    windowMinRtt        = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicInteger                 windowSamples       = new AtomicInteger();
+
+    HostLimiter(String host, AdmissionPolicy policy) {
+        this.host = host;
+        this.minLimit = policy.getMinLimit();
+        this.maxLimit = Math.max(policy.getMinLimit(), policy.getMaxLimit());
+        this.latencyTolerance = policy.getLatencyTolerance();
+        this.backoffRatio = policy.getBackoffRatio();
+        this.failureThreshold = policy.getFailureThreshold();
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(policy.getOpenDuration());
+        this.limitBits = new AtomicLong(Double.doubleToLongBits(Math.min(maxLimit, Math.max(minLimit, policy.getInitialLimit()))));
+    }
+
+    /**
+     * Returns current concurrency limit.
+     * @return current concurrency limit.
+     */
+    int getLimit() {
+        return (int) Double.longBitsToDouble(limitBits.get());
+    }
+
+    /**
+     * Returns the number of admitted requests which did not complete yet.
+     * @return the number of requests in flight.
+     */
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Admits a request.
+     * Each successful call must be followed by a call to {@link #complete(long, boolean)} or {@link #abandon()}.
+     * @return admission time (nano time).
+     * @throws RejectedRequestException if the circuit is open or the host is at its concurrency limit.
+     */
+    long acquire() throws RejectedRequestException {
+        BreakerState state = breaker.get();
+
+        if (state.circuit != Circuit.CLOSED) {
+            long now = System.nanoTime();
+
+            // A probe is admitted once the circuit was open long enough (or if previous probe never completed)
+            if (now - state.since < openNanos || !breaker.compareAndSet(state, new BreakerState(Circuit.HALF_OPEN, now)))
+                throw new RejectedRequestException(host, true, "Circuit is open for " + host);
+
+            inFlight.incrementAndGet();
+            return now;
+        }
+
+        int limit = getLimit();
+
+        while (true) {
+            int current = inFlight.get();
+
+            if (current >= limit)
+                throw new RejectedRequestException(host, false, String.format("Concurrency limit (%d) reached for %s", limit, host));
+
+            if (inFlight.compareAndSet(current, current + 1))
+                return System.nanoTime();
+        }
+    }
+
+    /**
+     * Completes an admitted request.
+     * @param start admission time returned by {@link #acquire()}
+     * @param failed true if request failed (I/O error or server error).
+     */
+    void complete(long start, boolean failed) {
+        int current = inFlight.getAndDecrement();
+
+        if (failed) {
+            reduceLimit();
+
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold || breaker.get().circuit == Circuit.HALF_OPEN) {
+                consecutiveFailures.set(0);
+                breaker.set(new BreakerState(Circuit.OPEN, System.nanoTime()));
+            }
+
+            return;
+        }
+
+        consecutiveFailures.set(0);
+
+        BreakerState state = breaker.get();
+        if (state.circuit == Circuit.HALF_OPEN)
+            breaker.compareAndSet(state, CLOSED);
+
+        long rtt = System.nanoTime() - start;
+        long baseline = updateBaseline(rtt);
+
+        if (baseline != Long.MAX_VALUE && rtt > latencyTolerance * baseline) {
+            reduceLimit();
+        } else {
+            double limit = Double.longBitsToDouble(limitBits.get());
+
+            if (current * 2 >= limit) // Limit is in use
+                updateLimit(limit, Math.min(maxLimit, limit + 1 / limit));
+        }
+    }
+
+    /** Releases an admitted request which completed without an outcome (e.g. it was cancelled). */
+    void abandon() {
+        inFlight.decrementAndGet();
+    }
+
+    private void reduceLimit() {
+        double limit = Double.longBitsToDouble(limitBits.get());
+        updateLimit(limit, Math.max(minLimit, limit * backoffRatio));
+    }
+
+    private void updateLimit(double expected, double limit) {
+        limitBits.compareAndSet(Double.doubleToLongBits(expected), Double.doubleToLongBits(limit)); // Lost updates are tolerated
+    }
+
+    /**
+     * Records a latency sample.
+     * @param rtt latency in nanoseconds
+     * @return baseline latency or {@code Long.MAX_VALUE} if there is no baseline yet.
+     */
+    private long updateBaseline(long rtt) {
+        long min;
+        while (rtt < (min = windowMinRtt.get()) && !windowMinRtt.compareAndSet(min, rtt)) {}
+
+        while (rtt < (min = baselineRtt.get()) && !baselineRtt.compareAndSet(min, rtt)) {}
+
+        if (windowSamples.incrementAndGet() >= BASELINE_WINDOW) {
+            windowSamples.set(0);
+            baselineRtt.set(windowMinRtt.getAndSet(Long.MAX_VALUE)); // Follows lasting latency changes
+        }
+
+        return baselineRtt.get();
+    }
+    // =========================================================================
+}
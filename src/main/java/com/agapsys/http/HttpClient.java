@@ -17,41 +17,595 @@
 package com.agapsys.http;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.ManagedNHttpClientConnectionFactory;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
 
 /**
  * Represents an HTTP client.
- * A Client can keep connection state managing cookies like a normal web browser does
+ * A Client can keep connection state managing cookies like a normal web browser does (see {@link #getCookieJar()}).
+ * A single instance can be safely shared by multiple threads.
  */
 public class HttpClient {
-    private final List<HttpHeader> defaultHeaders = new LinkedList<>();
+    // CLASS SCOPE =============================================================
+    /** Default minimum length of a request body to be compressed. */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
+    private static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+
+    private static final RequestInterceptor[] NO_INTERCEPTORS = new RequestInterceptor[0];
+
+    /** Wrapped client and its connection manager, published together. */
+    private static final class WrappedState {
+        private final CloseableHttpClient client;
+        private final PoolingHttpClientConnectionManager connectionManager;
+
+        private WrappedState(CloseableHttpClient client, PoolingHttpClientConnectionManager connectionManager) {
+            this.client = client;
+            this.connectionManager = connectionManager;
+        }
+    }
+
+    /** Metrics exporter and the scheduler running it, published together. */
+    private static final class ExporterState {
+        private final MetricsExporter exporter;
+        private final ScheduledExecutorService scheduler;
+
+        private ExporterState(MetricsExporter exporter, ScheduledExecutorService scheduler) {
+            this.exporter = exporter;
+            this.scheduler = scheduler;
+        }
+    }
+
+    /** Admission policy and the limiters created for it, published together. */
+    private static final class AdmissionState {
+        private final AdmissionPolicy policy;
+        private final ConcurrentHashMap<String, HostLimiter> limiters = new ConcurrentHashMap<>();
+
+        private AdmissionState(AdmissionPolicy policy) {
+            this.policy = policy;
+        }
+
+        private HostLimiter getLimiter(String targetKey) {
+            HostLimiter limiter = limiters.get(targetKey);
+
+            if (limiter == null) {
+                HostLimiter newLimiter = new HostLimiter(targetKey, policy);
+                limiter = limiters.putIfAbsent(targetKey, newLimiter);
+
+                if (limiter == null)
+                    limiter = newLimiter;
+            }
+
+            return limiter;
+        }
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final AtomicReference<List<HttpHeader>> defaultHeaders = new AtomicReference<>(Collections.<HttpHeader>emptyList());
+    private final AtomicReference<RequestInterceptor[]> interceptors = new AtomicReference<>(NO_INTERCEPTORS);
+    private final AtomicReference<WrappedState> wrappedState = new AtomicReference<>();
+    private final AtomicReference<CloseableHttpAsyncClient> wrappedAsyncClient = new AtomicReference<>();
+    private final AtomicReference<ExecutorService> executor = new AtomicReference<>();
+    private final AtomicReference<ExporterState> exporterState = new AtomicReference<>();
     private final boolean enableRedirects;
+    private final ConnectionPoolSettings poolSettings;
+    private final CookieInterceptor cookieInterceptor = new CookieInterceptor(this);
 
-    private CloseableHttpClient wrappedClient = null;
+    private volatile CookieJar cookieJar = new CookieJar();
+    private volatile ResponseCache responseCache = null;
+    private volatile Compression compression = Compression.NONE;
+    private volatile int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+    private volatile boolean responseDecompression = true;
+    private volatile RetryPolicy retryPolicy = null;
+    private volatile HedgingPolicy hedgingPolicy = null;
+    private volatile AdmissionState admissionState = null;
+    private final ConcurrentHashMap<String, Upstream> upstreams = new ConcurrentHashMap<>();
+    private volatile String defaultUpstream = null;
+    private volatile DnsResolver dnsResolver = null;
+    private final ConcurrentHashMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private volatile boolean metricsEnabled = false;
+    private final MetricsRecorder metrics = new MetricsRecorder();
+    private final BufferPool bufferPool = new BufferPool();
 
     public HttpClient() {
         this(false);
     }
 
     public HttpClient(boolean enableRedirects) {
+        this(enableRedirects, new ConnectionPoolSettings());
+    }
+
+    /**
+     * Constructor.
+     * @param enableRedirects defines if redirects will be followed by this client.
+     * @param poolSettings connection pool settings. Given instance is copied.
+     */
+    public HttpClient(boolean enableRedirects, ConnectionPoolSettings poolSettings) {
+        if (poolSettings == null)
+            throw new IllegalArgumentException("Null pool settings");
+
         this.enableRedirects = enableRedirects;
+        this.poolSettings = new ConnectionPoolSettings(poolSettings);
     }
 
     public final boolean areRedirectsEnabled() {
         return enableRedirects;
     }
 
+    /**
+     * Returns the connection pool settings used by this client.
+     * @return a copy of connection pool settings used by this client.
+     */
+    public ConnectionPoolSettings getPoolSettings() {
+        return new ConnectionPoolSettings(poolSettings);
+    }
+
+    /**
+     * Returns usage statistics of the whole connection pool.
+     * @return usage statistics of the whole connection pool.
+     */
+    public ConnectionPoolStats getTotalPoolStats() {
+        WrappedState state = wrappedState.get();
+
+        if (state == null)
+            return new ConnectionPoolStats(0, 0, 0, poolSettings.getMaxTotal());
+
+        return new ConnectionPoolStats(state.connectionManager.getTotalStats());
+    }
+
+    /**
+     * Returns usage statistics of the pool of buffers used to read responses and encode request bodies.
+     * @return usage statistics of the buffer pool.
+     */
+    public BufferPoolStats getBufferPoolStats() {
+        return bufferPool.getStats();
+    }
+
+    /**
+     * Returns the pool of buffers used to read responses and encode request bodies.
+     * @return the buffer pool of this client.
+     */
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Returns usage statistics of the connection pool for each known route.
+     * @return map of statistics. Keys are the target hosts (e.g. "http://example.com:80").
+     */
+    public Map<String, ConnectionPoolStats> getPoolStats() {
+        WrappedState state = wrappedState.get();
+
+        if (state == null)
+            return Collections.emptyMap();
+
+        PoolingHttpClientConnectionManager cm = state.connectionManager;
+        Map<String, ConnectionPoolStats> statsMap = new LinkedHashMap<>();
+        for (HttpRoute route : cm.getRoutes()) {
+            String key = route.getTargetHost().toURI();
+            ConnectionPoolStats stats = new ConnectionPoolStats(cm.getStats(route));
+            ConnectionPoolStats existing = statsMap.get(key);
+            statsMap.put(key, existing == null ? stats : existing.add(stats));
+        }
+
+        return Collections.unmodifiableMap(statsMap);
+    }
+
+    /**
+     * Returns the cookie jar used by this client.
+     * @return the cookie jar used by this client or null if cookies are not managed.
+     */
+    public CookieJar getCookieJar() {
+        return cookieJar;
+    }
+
+    /**
+     * Sets the cookie jar used by this client.
+     * Cookies received in responses are stored in the jar and matching cookies are sent on each request.
+     * @param cookieJar cookie jar. Passing null disables cookie management.
+     */
+    public void setCookieJar(CookieJar cookieJar) {
+        this.cookieJar = cookieJar;
+    }
+
+    /**
+     * Returns the response cache used by this client.
+     * @return the response cache used by this client or null if responses are not cached.
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Sets the response cache used by blocking executions of this client.
+     * @param responseCache response cache. Passing null disables caching.
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Returns the retry policy of this client.
+     * @return a copy of the retry policy or null if failed requests are not retried.
+     */
+    public RetryPolicy getRetryPolicy() {
+        RetryPolicy policy = retryPolicy;
+        return policy == null ? null : new RetryPolicy(policy);
+    }
+
+    /**
+     * Sets the retry policy of this client.
+     * Retries apply to the blocking execution path (including {@link #executeAll(Collection)}).
+     * @param retryPolicy retry policy (given instance is copied) or null to disable retries.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy == null ? null : new RetryPolicy(retryPolicy);
+    }
+
+    /**
+     * Returns the hedging policy of this client.
+     * @return a copy of the hedging policy or null if requests are not hedged.
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        HedgingPolicy policy = hedgingPolicy;
+        return policy == null ? null : new HedgingPolicy(policy);
+    }
+
+    /**
+     * Sets the hedging policy of this client.
+     * Hedging applies to GET requests executed through the blocking path. While it is enabled, latencies of GET
+     * requests are tracked per host, and hedged requests are sent on threads provided by {@link #getExecutor()}.
+     * @param hedgingPolicy hedging policy (given instance is copied) or null to disable hedging.
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy == null ? null : new HedgingPolicy(hedgingPolicy);
+    }
+
+    /**
+     * Returns the admission policy of this client.
+     * @return a copy of the admission policy or null if requests are not subject to admission control.
+     */
+    public AdmissionPolicy getAdmissionPolicy() {
+        AdmissionState state = admissionState;
+        return state == null ? null : new AdmissionPolicy(state.policy);
+    }
+
+    /**
+     * Sets the admission policy of this client.
+     * Admission control applies to the blocking execution path (each attempt of a retried request and each copy of a
+     * hedged request is admitted separately). Requests which are not admitted fail immediately with a
+     * {@link RejectedRequestException}. Setting a policy discards the limits and circuits learned so far.
+     * @param admissionPolicy admission policy (given instance is copied) or null to disable admission control.
+     */
+    public void setAdmissionPolicy(AdmissionPolicy admissionPolicy) {
+        this.admissionState = admissionPolicy == null ? null : new AdmissionState(new AdmissionPolicy(admissionPolicy));
+    }
+
+    /**
+     * Returns the DNS resolver used by the connection managers of this client.
+     * @return the DNS resolver or null if the system resolver is used.
+     */
+    public DnsResolver getDnsResolver() {
+        return dnsResolver;
+    }
+
+    /**
+     * Sets the DNS resolver used by the connection managers of this client (e.g. a {@link CachingDnsResolver}).
+     * Resolver is read when connection managers are created, so it must be set before this client is used.
+     * @param dnsResolver DNS resolver or null to use the system resolver.
+     * @throws IllegalStateException if this client was already used.
+     */
+    public void setDnsResolver(DnsResolver dnsResolver) {
+        if (wrappedState.get() != null || wrappedAsyncClient.get() != null)
+            throw new IllegalStateException("DNS resolver must be set before the client is used");
+
+        this.dnsResolver = dnsResolver;
+    }
+
+    /**
+     * Registers an upstream group, replacing any group with the same name (and discarding its health state).
+     * Requests addressed to the group (see {@link UpstreamGroup}) are sent to one of its instances through the
+     * blocking execution path. Each attempt of a retried request (and each copy of a hedged request) chooses an instance.
+     * @param group upstream group (given instance is copied).
+     */
+    public void addUpstream(UpstreamGroup group) {
+        if (group == null)
+            throw new IllegalArgumentException("Null group");
+
+        upstreams.put(group.getName(), new Upstream(new UpstreamGroup(group)));
+    }
+
+    /**
+     * Removes an upstream group.
+     * @param name group name
+     * @return a boolean indicating if there was a group with given name.
+     */
+    public boolean removeUpstream(String name) {
+        return upstreams.remove(name) != null;
+    }
+
+    /**
+     * Returns registered upstream groups.
+     * @return copies of registered upstream groups.
+     */
+    public List<UpstreamGroup> getUpstreams() {
+        List<UpstreamGroup> groups = new ArrayList<>();
+
+        for (Upstream upstream : upstreams.values()) {
+            groups.add(new UpstreamGroup(upstream.getGroup()));
+        }
+
+        return groups;
+    }
+
+    /**
+     * Returns the name of the upstream group which relative request URIs are sent to.
+     * @return the name of the default upstream group or null if there is no such group.
+     */
+    public String getDefaultUpstream() {
+        return defaultUpstream;
+    }
+
+    /**
+     * Sets the upstream group which relative request URIs (e.g. "/users/1") are sent to.
+     * Requests with relative URIs fail with an {@link UnknownHostException} while no group with given name is registered.
+     * @param name group name or null to disable resolution of relative URIs.
+     */
+    public void setDefaultUpstream(String name) {
+        if (name != null && name.trim().isEmpty())
+            throw new IllegalArgumentException("Empty name");
+
+        this.defaultUpstream = name;
+    }
+
+    /**
+     * Returns the upstream group given URI is addressed to.
+     * @param uri request URI
+     * @return upstream group or null if URI is not addressed to a group.
+     * @throws UnknownHostException if URI is addressed to a group which is not registered.
+     */
+    private Upstream getUpstream(URI uri) throws UnknownHostException {
+        String name;
+
+        if (uri.isAbsolute()) {
+            if (!Upstream.SCHEME.equalsIgnoreCase(uri.getScheme()))
+                return null;
+
+            name = uri.getRawAuthority();
+        } else {
+            name = defaultUpstream;
+
+            if (name == null)
+                return null;
+        }
+
+        Upstream upstream = name == null ? null : upstreams.get(name);
+
+        if (upstream == null)
+            throw new UnknownHostException("Unknown upstream group: " + name);
+
+        return upstream;
+    }
+
+    /**
+     * Returns a boolean indicating if request phases are timed.
+     * @return a boolean indicating if request phases are timed.
+     */
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * Defines if request phases are timed. It is disabled by default.
+     * When enabled, the phases (see {@link RequestPhase}) of requests executed through the blocking path are recorded
+     * into histograms keyed by target host and method (see {@link #getMetrics()}).
+     * Connection and TLS handshake are timed by the connection manager created by {@link #createConnectionManager()}.
+     * @param metricsEnabled true to time request phases.
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * Returns a snapshot of recorded metrics.
+     * @return an immutable snapshot of recorded metrics, one entry per target host and method.
+     */
+    public List<RequestMetrics> getMetrics() {
+        return Collections.unmodifiableList(metrics.snapshot());
+    }
+
+    /** Discards all recorded metrics. */
+    public void resetMetrics() {
+        metrics.clear();
+    }
+
+    /**
+     * Returns the exporter receiving metrics of this client.
+     * @return the exporter receiving metrics of this client or null if metrics are not exported.
+     */
+    public MetricsExporter getMetricsExporter() {
+        ExporterState state = exporterState.get();
+        return state == null ? null : state.exporter;
+    }
+
+    /**
+     * Sets the exporter receiving metrics of this client.
+     * Given exporter is called periodically by a background thread and once more when this client is closed.
+     * Replacing the exporter (or closing this client) waits for an export in progress to finish, so exports are never concurrent.
+     * Metrics must be enabled (see {@link #setMetricsEnabled(boolean)}) in order to be recorded.
+     * @param exporter metrics exporter. Passing null stops exporting metrics.
+     * @param period export period in milliseconds. Ignored if exporter is null.
+     */
+    public void setMetricsExporter(final MetricsExporter exporter, long period) {
+        ExporterState newState = null;
+
+        if (exporter != null) {
+            if (period < 1)
+                throw new IllegalArgumentException("Invalid period: " + period);
+
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "http-client-metrics");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            newState = new ExporterState(exporter, scheduler);
+        }
+
+        ExporterState previous = exporterState.getAndSet(newState);
+
+        if (previous != null)
+            stopExporter(previous); // An export in progress finishes before the next exporter is started
+
+        if (newState != null) {
+            newState.scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    exportMetrics(exporter);
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the scheduler of given exporter, waiting for an export in progress to finish.
+     * @param state exporter state.
+     * @return a boolean indicating if the scheduler was terminated. If calling thread is interrupted while waiting,
+     * its interrupt status is restored and false is returned.
+     */
+    private static boolean stopExporter(ExporterState state) {
+        state.scheduler.shutdown();
+
+        try {
+            while (!state.scheduler.awaitTermination(1, TimeUnit.SECONDS)) {}
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void exportMetrics(MetricsExporter exporter) {
+        try {
+            exporter.export(getMetrics());
+        } catch (RuntimeException ignored) {
+            // A failing export must not cancel next ones
+        }
+    }
+
+    /**
+     * Returns the compression applied to request bodies.
+     * @return the compression applied to request bodies.
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets the compression applied to request bodies which are not smaller than {@linkplain #getCompressionThreshold() compression threshold}.
+     * Requests can override this setting (see {@link EntityRequest#setCompression(Compression)}).
+     * The server must accept compressed request bodies.
+     * @param compression compression applied to request bodies.
+     */
+    public void setCompression(Compression compression) {
+        if (compression == null)
+            throw new IllegalArgumentException("Null compression");
+
+        this.compression = compression;
+    }
+
+    /**
+     * Returns the minimum length of a request body to be compressed.
+     * @return the minimum length (in bytes) of a request body to be compressed.
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Sets the minimum length of a request body to be compressed. Bodies with unknown length are always compressed.
+     * @param compressionThreshold minimum length (in bytes) of a request body to be compressed.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        if (compressionThreshold < 0)
+            throw new IllegalArgumentException("Invalid compression threshold: " + compressionThreshold);
+
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Returns a boolean indicating if compressed responses are requested and decompressed.
+     * @return a boolean indicating if compressed responses are requested and decompressed.
+     */
+    public boolean isResponseDecompressionEnabled() {
+        return responseDecompression;
+    }
+
+    /**
+     * Defines if compressed responses are requested and decompressed. It is enabled by default.
+     * When enabled, 'Accept-Encoding' header is sent (unless request already defines it) and gzip/deflate encoded
+     * responses are decompressed as they are read. Requests can override this setting (see {@link HttpRequest#setResponseDecompression(Boolean)}).
+     * @param responseDecompression true to decompress responses.
+     */
+    public void setResponseDecompressionEnabled(boolean responseDecompression) {
+        this.responseDecompression = responseDecompression;
+    }
+
     /**
      * Adds given default header to be sent on each request using this client.
      * @param name header name
      * @param value header value
      */
     public void addDefaultHeader(String name, String value) {
-        defaultHeaders.add(new HttpHeader(name, value));
+        addDefaultHeaders(new HttpHeader(name, value));
     }
 
     /**
@@ -68,22 +622,84 @@ public class HttpClient {
             if (header == null)
                 throw new IllegalArgumentException("Null header on index " + i);
 
-            addDefaultHeader(header.getName(), header.getValue());
             i++;
         }
+
+        while (true) {
+            List<HttpHeader> current = defaultHeaders.get();
+            List<HttpHeader> updated = new ArrayList<>(current.size() + headers.length);
+            updated.addAll(current);
+
+            for (HttpHeader header : headers) {
+                updated.add(new HttpHeader(header.getName(), header.getValue()));
+            }
+
+            if (defaultHeaders.compareAndSet(current, Collections.unmodifiableList(updated)))
+                return;
+        }
     }
 
     /** Removes all registered default headers. */
     public void clearDefaultHeaders() {
-        defaultHeaders.clear();
+        defaultHeaders.set(Collections.<HttpHeader>emptyList());
     }
 
     /**
      * Returns default headers associated with this client.
-     * @return default headers associated with this client.
+     * @return an immutable snapshot of default headers associated with this client.
      */
     public List<HttpHeader> getDefaultHeaders() {
-        return defaultHeaders;
+        return defaultHeaders.get();
+    }
+
+    /**
+     * Adds an interceptor to this client.
+     * Interceptors are called in registration order on each request sent over the network through the blocking path.
+     * @param interceptor interceptor to be added
+     */
+    public void addInterceptor(RequestInterceptor interceptor) {
+        if (interceptor == null)
+            throw new IllegalArgumentException("Null interceptor");
+
+        while (true) {
+            RequestInterceptor[] current = interceptors.get();
+            RequestInterceptor[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = interceptor;
+
+            if (interceptors.compareAndSet(current, updated))
+                return;
+        }
+    }
+
+    /**
+     * Removes an interceptor from this client.
+     * @param interceptor interceptor to be removed
+     * @return a boolean indicating if given interceptor was registered.
+     */
+    public boolean removeInterceptor(RequestInterceptor interceptor) {
+        while (true) {
+            RequestInterceptor[] current = interceptors.get();
+            List<RequestInterceptor> updated = new ArrayList<>(Arrays.asList(current));
+
+            if (!updated.remove(interceptor))
+                return false;
+
+            if (interceptors.compareAndSet(current, updated.isEmpty() ? NO_INTERCEPTORS : updated.toArray(new RequestInterceptor[updated.size()])))
+                return true;
+        }
+    }
+
+    /** Removes all registered interceptors. */
+    public void clearInterceptors() {
+        interceptors.set(NO_INTERCEPTORS);
+    }
+
+    /**
+     * Returns the interceptors registered in this client.
+     * @return an immutable snapshot of interceptors registered in this client, in calling order.
+     */
+    public List<RequestInterceptor> getInterceptors() {
+        return Collections.unmodifiableList(Arrays.asList(interceptors.get()));
     }
 
     /**
@@ -92,23 +708,501 @@ public class HttpClient {
      * @throws java.io.IOException if there was an I/O error closing this client
      */
     public void close() throws IOException {
-        if (wrappedClient == null) throw new IOException("Client was not initialized");
+        WrappedState state = wrappedState.getAndSet(null);
+        CloseableHttpAsyncClient asyncClient = wrappedAsyncClient.getAndSet(null);
+        ExecutorService executorService = executor.getAndSet(null);
+        ExporterState exporter = exporterState.getAndSet(null);
+        if (state == null && asyncClient == null && executorService == null && exporter == null) throw new IOException("Client was not initialized");
+
+        if (executorService != null)
+            executorService.shutdown();
 
-        wrappedClient.close();
-        wrappedClient = null;
+        if (exporter != null && stopExporter(exporter))
+            exportMetrics(exporter.exporter);
+
+        try {
+            if (state != null)
+                state.client.close();
+        } finally {
+            if (asyncClient != null)
+                asyncClient.close();
+        }
+    }
+
+    /**
+     * Creates the executor used to run submitted requests.
+     * Default implementation runs each request in its own thread, which is a virtual thread on Java 21+.
+     * @return the executor used to run submitted requests.
+     */
+    protected ExecutorService createExecutor() {
+        return RequestExecutors.newPerRequestExecutor();
+    }
+
+    /**
+     * Returns the executor used to run submitted requests.
+     * @return the executor used to run submitted requests.
+     */
+    protected ExecutorService getExecutor() {
+        ExecutorService executorService = executor.get();
+
+        if (executorService == null) {
+            ExecutorService newExecutor = createExecutor();
+
+            if (executor.compareAndSet(null, newExecutor)) {
+                executorService = newExecutor;
+            } else {
+                newExecutor.shutdown();
+
+                executorService = executor.get();
+                if (executorService == null)
+                    return getExecutor();
+            }
+        }
+
+        return executorService;
+    }
+
+    /**
+     * Executes given requests concurrently.
+     * Concurrency is limited by pool settings: at most {@linkplain ConnectionPoolSettings#getMaxTotal() max total} requests
+     * are in flight (or waiting to be consumed) and at most {@linkplain ConnectionPoolSettings#getMaxPerRoute() max per route}
+     * requests per host are in flight (or waiting to be consumed).
+     * @param requests requests to be executed
+     * @return batch delivering results in completion order.
+     */
+    public BatchExecution executeAll(Collection<? extends HttpRequest> requests) {
+        return executeAll(requests, poolSettings.getMaxTotal(), poolSettings.getMaxPerRoute(), poolSettings.getMaxTotal());
+    }
+
+    /**
+     * Executes given requests concurrently.
+     * Requests are executed on threads provided by {@link #getExecutor()}.
+     * @param requests requests to be executed
+     * @param maxConcurrency maximum number of requests in flight
+     * @param maxPerHost maximum number of requests per host in flight or waiting to be consumed
+     * @param maxBuffered maximum number of requests in flight plus results waiting to be consumed
+     * @return batch delivering results in completion order.
+     */
+    public BatchExecution executeAll(Collection<? extends HttpRequest> requests, int maxConcurrency, int maxPerHost, int maxBuffered) {
+        BatchExecution execution = new BatchExecution(this, getExecutor(), requests, maxConcurrency, maxPerHost, maxBuffered);
+        execution.start();
+        return execution;
+    }
+
+    /**
+     * Returns a boolean indicating if submitted requests run on virtual threads.
+     * @return a boolean indicating if submitted requests run on virtual threads.
+     */
+    public boolean usesVirtualThreads() {
+        return RequestExecutors.usesVirtualThreads();
+    }
+
+    /**
+     * Creates the connection manager used by wrapped client.
+     * Default implementation uses socket factories which time connection and TLS handshake when metrics are enabled
+     * (and open plain connections on socket channels when {@linkplain ConnectionPoolSettings#isZeroCopyUploads() zero-copy uploads} are enabled)
+     * and the {@linkplain #getDnsResolver() DNS resolver} of this client.
+     * @return the connection manager used by wrapped client.
+     */
+    protected PoolingHttpClientConnectionManager createConnectionManager() {
+        long ttl = poolSettings.getConnectionTtl();
+
+        PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(TimingSocketFactory.createDefaultRegistry(poolSettings.isZeroCopyUploads()), null, null, dnsResolver, ttl, TimeUnit.MILLISECONDS);
+        cm.setMaxTotal(poolSettings.getMaxTotal());
+        cm.setDefaultMaxPerRoute(poolSettings.getMaxPerRoute());
+        cm.setValidateAfterInactivity(poolSettings.getValidateAfterInactivity());
+
+        return cm;
     }
 
     /**
      * Returns wrapped client instance.
+     * If multiple threads race to initialize this client, only one wrapped instance is kept and the others are closed.
      * @return wrapped client instance.
      */
     protected CloseableHttpClient getWrappedClient() {
-        if (wrappedClient == null) {
+        WrappedState state = wrappedState.get();
+
+        if (state == null) {
+            PoolingHttpClientConnectionManager cm = createConnectionManager();
+
             HttpClientBuilder builder = HttpClientBuilder.create().setDefaultRequestConfig(RequestConfig.custom().setRedirectsEnabled(areRedirectsEnabled()).build());
-            builder.setDefaultHeaders(getDefaultHeaders());
-            wrappedClient = builder.build();
+            builder.setConnectionManager(cm);
+            builder.disableCookieManagement();
+            builder.disableContentCompression(); // Handled by this client (see createWireRequest())
+            builder.setRequestExecutor(new ClientRequestExecutor());
+            builder.addInterceptorLast((HttpRequestInterceptor) cookieInterceptor);
+            builder.addInterceptorLast((HttpResponseInterceptor) cookieInterceptor);
+
+            if (poolSettings.isEvictExpiredConnections())
+                builder.evictExpiredConnections();
+
+            if (poolSettings.getMaxIdleTime() >= 0)
+                builder.evictIdleConnections(poolSettings.getMaxIdleTime(), TimeUnit.MILLISECONDS);
+
+            WrappedState newState = new WrappedState(builder.build(), cm);
+
+            if (wrappedState.compareAndSet(null, newState)) {
+                state = newState;
+            } else {
+                try {
+                    newState.client.close();
+                } catch (IOException ignored) {}
+
+                state = wrappedState.get();
+                if (state == null)
+                    return getWrappedClient();
+            }
+        }
+
+        return state.client;
+    }
+
+    /**
+     * Creates the connection manager used by wrapped asynchronous client.
+     * @return the connection manager used by wrapped asynchronous client.
+     * @throws IOException if the I/O reactor could not be created.
+     */
+    protected PoolingNHttpClientConnectionManager createAsyncConnectionManager() throws IOException {
+        long ttl = poolSettings.getConnectionTtl();
+
+        PoolingNHttpClientConnectionManager cm = new PoolingNHttpClientConnectionManager(
+            new DefaultConnectingIOReactor(IOReactorConfig.DEFAULT),
+            ManagedNHttpClientConnectionFactory.INSTANCE,
+            RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", SSLIOSessionStrategy.getDefaultStrategy())
+                .build(),
+            DefaultSchemePortResolver.INSTANCE,
+            dnsResolver != null ? dnsResolver : SystemDefaultDnsResolver.INSTANCE,
+            ttl,
+            TimeUnit.MILLISECONDS
+        );
+        cm.setMaxTotal(poolSettings.getMaxTotal());
+        cm.setDefaultMaxPerRoute(poolSettings.getMaxPerRoute());
+
+        return cm;
+    }
+
+    /**
+     * Returns wrapped asynchronous client instance.
+     * Asynchronous client is started on first use and shares the pool settings of this client (except connection validation and background eviction).
+     * If multiple threads race to initialize it, each candidate is started before being published and only one of them is kept.
+     * @return wrapped asynchronous client instance.
+     * @throws IOException if the client could not be created.
+     */
+    protected CloseableHttpAsyncClient getWrappedAsyncClient() throws IOException {
+        CloseableHttpAsyncClient asyncClient = wrappedAsyncClient.get();
+
+        if (asyncClient == null) {
+            HttpAsyncClientBuilder builder = HttpAsyncClientBuilder.create().setDefaultRequestConfig(RequestConfig.custom().setRedirectsEnabled(areRedirectsEnabled()).build());
+            builder.setConnectionManager(createAsyncConnectionManager());
+            builder.disableCookieManagement();
+            builder.addInterceptorLast((HttpRequestInterceptor) cookieInterceptor);
+            builder.addInterceptorLast((HttpResponseInterceptor) cookieInterceptor);
+
+            CloseableHttpAsyncClient newClient = builder.build();
+            newClient.start(); // Published instances must be started: other threads use them right away
+
+            if (wrappedAsyncClient.compareAndSet(null, newClient)) {
+                asyncClient = newClient;
+            } else {
+                newClient.close();
+
+                asyncClient = wrappedAsyncClient.get();
+                if (asyncClient == null)
+                    return getWrappedAsyncClient();
+            }
         }
 
-        return wrappedClient;
+        return asyncClient;
+    }
+
+    /**
+     * Executes given request, serving it from the response cache when possible.
+     * @param request request to be executed
+     * @return server response
+     * @throws IOException if there was an I/O error while executing the request.
+     */
+    HttpResponse execute(HttpRequest request) throws IOException {
+        ResponseCache cache = responseCache;
+
+        if (cache != null)
+            return cache.execute(this, request);
+
+        return exchange(request, Collections.<HttpHeader>emptyList());
+    }
+
+    /**
+     * Sends given request over the network through registered interceptors.
+     * @param request request to be sent
+     * @param extraHeaders headers sent after request headers
+     * @return server response
+     * @throws IOException if there was an I/O error while executing the request.
+     */
+    HttpResponse exchange(HttpRequest request, List<HttpHeader> extraHeaders) throws IOException {
+        RequestInterceptor[] chain = interceptors.get();
+
+        if (chain.length == 0)
+            return transmit(request, extraHeaders);
+
+        return new InterceptorChain(this, chain, request, extraHeaders).proceed();
+    }
+
+    /**
+     * Sends given request over the network.
+     * Wire request is built for this call only, so neither this client nor given request are modified.
+     * @param request request to be sent
+     * @param extraHeaders headers sent after request headers
+     * @return server response
+     * @throws IOException if there was an I/O error while executing the request.
+     */
+    HttpResponse transmit(HttpRequest request, List<HttpHeader> extraHeaders) throws IOException {
+        RetryPolicy retry = retryPolicy;
+        HedgingPolicy hedging = hedgingPolicy;
+
+        if (retry == null)
+            return attempt(request, createWireRequest(request, extraHeaders), extraHeaders, hedging);
+
+        int maxAttempts = retry.isRetriable(request.getMethod()) ? retry.getMaxAttempts() : 1;
+
+        for (int attempt = 1; ; attempt++) {
+            HttpRequestBase wireRequest = createWireRequest(request, extraHeaders);
+
+            if (wireRequest instanceof HttpEntityEnclosingRequest) {
+                HttpEntity entity = ((HttpEntityEnclosingRequest) wireRequest).getEntity();
+
+                if (entity != null && !entity.isRepeatable())
+                    maxAttempts = attempt; // Body cannot be sent again
+            }
+
+            HttpResponse response;
+            try {
+                response = attempt(request, wireRequest, extraHeaders, hedging);
+            } catch (IOException | RuntimeException ex) {
+                if (attempt >= maxAttempts || !retry.isRetriable(ex))
+                    throw ex;
+
+                sleep(retry.getBackoff(attempt, null));
+                continue;
+            }
+
+            if (attempt >= maxAttempts || !retry.isRetriable(response.getStatusCode()))
+                return response;
+
+            HttpHeader retryAfter = response.getFirstHeader("Retry-After");
+            long backoff = retry.getBackoff(attempt, retryAfter == null ? null : retryAfter.getValue());
+            response.close();
+            sleep(backoff);
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    /**
+     * Makes a single attempt to send given request, hedging it if applicable.
+     * @param request request
+     * @param wireRequest request to be sent
+     * @param extraHeaders headers sent after request headers
+     * @param hedging hedging policy (may be null)
+     * @return server response
+     * @throws IOException if there was an I/O error while executing the request.
+     */
+    private HttpResponse attempt(HttpRequest request, HttpRequestBase wireRequest, List<HttpHeader> extraHeaders, HedgingPolicy hedging) throws IOException {
+        if (hedging != null && wireRequest.getMethod().equals("GET")) {
+            LatencyHistogram latencies = getLatencyHistogram(request.getTargetKey());
+
+            if (latencies.getCount() >= hedging.getMinSamples()) {
+                long delay = Math.max(TimeUnit.MILLISECONDS.toMicros(hedging.getMinDelay()), latencies.getPercentile(hedging.getPercentile()));
+                return new HedgedExchange(this, request, extraHeaders, delay).execute(wireRequest);
+            }
+        }
+
+        return send(request, wireRequest);
+    }
+
+    /**
+     * Sends given wire request.
+     * @param request request
+     * @param wireRequest request to be sent
+     * @return server response
+     * @throws RejectedRequestException if the request was not admitted (see {@link #setAdmissionPolicy(AdmissionPolicy)}).
+     * @throws IOException if there was an I/O error while executing the request.
+     */
+    HttpResponse send(HttpRequest request, HttpRequestBase wireRequest) throws IOException {
+        boolean trackLatency = hedgingPolicy != null && wireRequest.getMethod().equals("GET");
+        boolean timePhases = metricsEnabled;
+        long start = trackLatency || timePhases ? System.nanoTime() : 0;
+
+        RequestTimer timer = null;
+        HttpClientContext context = null;
+
+        if (timePhases) {
+            timer = new RequestTimer(start);
+            context = HttpClientContext.create();
+            context.setAttribute(RequestTimer.ATTRIBUTE, timer);
+        }
+
+        Upstream upstream = getUpstream(wireRequest.getURI());
+        Upstream.Instance instance = null;
+        HostLimiter limiter = null;
+        long admitted = 0;
+        boolean admittedByLimiter = false;
+        boolean sent = false;
+
+        CloseableHttpResponse response;
+        try {
+            if (upstream != null) {
+                instance = upstream.acquire();
+                wireRequest.setURI(instance.resolve(wireRequest.getURI()));
+            }
+
+            AdmissionState admission = admissionState;
+
+            if (admission != null) {
+                limiter = admission.getLimiter(instance != null ? instance.getTargetKey() : request.getTargetKey());
+                admitted = limiter.acquire();
+                admittedByLimiter = true;
+            }
+
+            CloseableHttpClient client = getWrappedClient();
+            sent = true;
+            response = client.execute(wireRequest, context);
+        } catch (IOException | RuntimeException ex) {
+            if (!sent || wireRequest.isAborted()) {
+                // Not sent (e.g. rejected) or aborted (e.g. losing copy of a hedged request): no outcome
+                if (admittedByLimiter)
+                    limiter.abandon();
+
+                if (instance != null)
+                    upstream.release(instance);
+            } else {
+                if (admittedByLimiter)
+                    limiter.complete(admitted, true);
+
+                if (instance != null)
+                    upstream.complete(instance, true);
+            }
+
+            throw ex;
+        }
+
+        boolean failed = response.getStatusLine().getStatusCode() >= 500;
+
+        if (limiter != null)
+            limiter.complete(admitted, failed);
+
+        if (instance != null)
+            upstream.complete(instance, failed);
+
+        if (trackLatency)
+            getLatencyHistogram(request.getTargetKey()).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+
+        if (isResponseDecompressionEnabled(request))
+            DecompressingEntity.decompress(response);
+
+        if (timer != null) {
+            HttpHost target = context.getTargetHost();
+
+            if (target != null)
+                timer.record(metrics.getHistograms(target, wireRequest.getMethod()), response); // Body read is timed by outermost entity
+        }
+
+        return new HttpResponse(response);
+    }
+
+    private LatencyHistogram getLatencyHistogram(String targetKey) {
+        LatencyHistogram histogram = latencies.get(targetKey);
+
+        if (histogram == null) {
+            LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = latencies.putIfAbsent(targetKey, newHistogram);
+
+            if (histogram == null)
+                histogram = newHistogram;
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Creates the request sent over the network, applying content coding settings.
+     * @param request request
+     * @param extraHeaders headers added after request headers
+     * @return request to be sent.
+     */
+    HttpRequestBase createWireRequest(HttpRequest request, List<HttpHeader> extraHeaders) {
+        HttpRequestBase wireRequest = request.createWireRequest(getDefaultHeaders(), extraHeaders);
+
+        if (isResponseDecompressionEnabled(request) && !wireRequest.containsHeader("Accept-Encoding"))
+            wireRequest.addHeader("Accept-Encoding", ACCEPTED_ENCODINGS);
+
+        if (wireRequest instanceof HttpEntityEnclosingRequest) {
+            HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) wireRequest;
+            HttpEntity entity = entityRequest.getEntity();
+
+            if (entity instanceof TextEntity)
+                ((TextEntity) entity).setBufferPool(bufferPool);
+
+            Compression requestCompression = request.getBodyCompression();
+            if (requestCompression == null)
+                requestCompression = compression;
+
+            if (entity != null && requestCompression != Compression.NONE && entity.getContentEncoding() == null && !wireRequest.containsHeader("Content-Encoding")) {
+                long length = entity.getContentLength();
+
+                if (length < 0 || length >= compressionThreshold)
+                    entityRequest.setEntity(new CompressingEntity(entity, requestCompression));
+            }
+        }
+
+        return wireRequest;
+    }
+
+    /**
+     * Returns a boolean indicating if responses to given request are decompressed.
+     * @param request request.
+     * @return request setting or client setting if request does not override it.
+     */
+    boolean isResponseDecompressionEnabled(HttpRequest request) {
+        Boolean requestSetting = request.getResponseDecompression();
+        return requestSetting != null ? requestSetting : responseDecompression;
+    }
+
+    /**
+     * Executes given request through the blocking path on a thread provided by {@link #getExecutor()}.
+     * @param request request to be executed
+     * @return future response
+     */
+    Future<HttpResponse> submit(final HttpRequest request) {
+        return getExecutor().submit(new Callable<HttpResponse>() {
+            @Override
+            public HttpResponse call() throws Exception {
+                return execute(request);
+            }
+        });
+    }
+
+    /**
+     * Executes given request without blocking the calling thread.
+     * Response content is fully received before the returned future completes.
+     * @param request request to be executed
+     * @param callback optional callback notified when execution finishes
+     * @return future response
+     * @throws IOException if the asynchronous client could not be initialized.
+     */
+    Future<HttpResponse> executeAsync(HttpRequest request, FutureCallback<HttpResponse> callback) throws IOException {
+        HttpRequestBase wireRequest = createWireRequest(request, Collections.<HttpHeader>emptyList());
+        AsyncResponseFuture future = new AsyncResponseFuture(callback, isResponseDecompressionEnabled(request));
+        future.setDelegate(getWrappedAsyncClient().execute(wireRequest, future.getWrappedCallback()));
+        return future;
     }
+    // =========================================================================
 }
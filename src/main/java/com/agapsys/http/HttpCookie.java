@@ -15,21 +15,47 @@
  */
 package com.agapsys.http;
 
-import com.agapsys.http.utils.NameValuePair;
-import java.util.regex.Pattern;
-
+/** Represents a cookie sent by a server through a 'Set-Cookie' header. */
 public class HttpCookie {
+    // CLASS SCOPE =============================================================
+    /**
+     * Parses given 'Set-Cookie' header value.
+     * @param headerLine header value
+     * @return parsed cookie or null if given value does not contain a valid name/value pair.
+     */
+    static HttpCookie parse(String headerLine) {
+        HttpCookie cookie = new HttpCookie();
+        cookie._setValues(headerLine);
+
+        return cookie.name == null ? null : cookie;
+    }
+
+    /**
+     * Returns given region of a string without leading and trailing whitespace.
+     * @param str string
+     * @param start region start (inclusive)
+     * @param end region end (exclusive)
+     * @return trimmed region.
+     */
+    private static String __trim(String str, int start, int end) {
+        while (start < end && str.charAt(start) <= ' ') {
+            start++;
+        }
 
-    private static NameValuePair __getEntry(String token, String delimiter) {
-        String[] mTokens = token.split(Pattern.quote(delimiter));
+        while (end > start && str.charAt(end - 1) <= ' ') {
+            end--;
+        }
 
-        return new NameValuePair(mTokens[0].trim(), mTokens.length > 1 ? mTokens[1].trim() : null);
+        return str.substring(start, end);
     }
+    // =========================================================================
 
+    // INSTANCE SCOPE ==========================================================
     public String  name;
     public String  value;
     public String  expires;
-    public int     maxAge;
+    /** Max-Age attribute in seconds (received negative values are stored as 0), or -1 if not specified. */
+    public int     maxAge = -1;
     public String  domain;
     public String  path;
     public boolean secure;
@@ -41,46 +67,74 @@ public class HttpCookie {
         _setValues(headerLine);
     }
 
+    /**
+     * Copy constructor.
+     * @param other instance to be copied
+     */
+    HttpCookie(HttpCookie other) {
+        this.name     = other.name;
+        this.value    = other.value;
+        this.expires  = other.expires;
+        this.maxAge   = other.maxAge;
+        this.domain   = other.domain;
+        this.path     = other.path;
+        this.secure   = other.secure;
+        this.httpOnly = other.httpOnly;
+    }
+
+    /**
+     * Sets the values of this instance from given 'Set-Cookie' header value.
+     * Parsing is done in a single pass (without regular expressions). Unknown or malformed attributes are ignored.
+     * @param headerLine header value
+     */
     final void _setValues(String headerLine) {
-        String[] tokens = headerLine.split(Pattern.quote(";"));
-
-        int i = 0;
-        for (String token : tokens) {
-            NameValuePair entry = __getEntry(token, "=");
-
-            if (i == 0) {
-                this.name = entry.getName();
-                this.value = entry.getValue();
-            } else {
-                switch (entry.getName().toLowerCase()) {
-                    case "expires":
-                        this.expires = entry.getValue();
-                        break;
-
-                    case "max-age":
-                        this.maxAge = Integer.parseInt(entry.getValue());
-                        break;
-
-                    case "domain":
-                        this.domain = entry.getValue();
-                        break;
-
-                    case "path":
-                        this.path = entry.getValue();
-                        break;
-
-                    case "secure":
-                        this.secure = true;
-                        break;
-
-                    case "httponly":
-                        this.httpOnly = true;
-                        break;
-                }
+        int length = headerLine.length();
+        int pos = 0;
+        boolean first = true;
+
+        while (pos <= length) {
+            int end = headerLine.indexOf(';', pos);
+            if (end < 0)
+                end = length;
+
+            int eq = headerLine.indexOf('=', pos);
+            if (eq >= end)
+                eq = -1;
+
+            String attrName = __trim(headerLine, pos, eq < 0 ? end : eq);
+            String attrValue = eq < 0 ? null : __trim(headerLine, eq + 1, end);
+
+            if (first) {
+                if (attrValue == null || attrName.isEmpty())
+                    return; // Invalid name/value pair: cookie is ignored
+
+                this.name = attrName;
+                this.value = attrValue;
+                first = false;
+            } else if (attrName.equalsIgnoreCase("expires")) {
+                this.expires = attrValue;
+            } else if (attrName.equalsIgnoreCase("max-age")) {
+                try {
+                    // Zero or negative values expire the cookie immediately (RFC 6265, section 5.2.2)
+                    this.maxAge = attrValue == null ? this.maxAge : Math.max(0, Integer.parseInt(attrValue));
+                } catch (NumberFormatException ignored) {}
+            } else if (attrName.equalsIgnoreCase("domain")) {
+                this.domain = attrValue;
+            } else if (attrName.equalsIgnoreCase("path")) {
+                this.path = attrValue;
+            } else if (attrName.equalsIgnoreCase("secure")) {
+                this.secure = true;
+            } else if (attrName.equalsIgnoreCase("httponly")) {
+                this.httpOnly = true;
             }
 
-            i++;
+            pos = end + 1;
         }
     }
 
+    @Override
+    public String toString() {
+        return String.format("%s=%s", name, value);
+    }
+    // =========================================================================
 }
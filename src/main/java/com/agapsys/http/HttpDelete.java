@@ -24,6 +24,10 @@ public class HttpDelete extends HttpRequest {
     public HttpDelete(String uri, Object...uriParams) {
         super(uri, uriParams);
     }
+
+    public HttpDelete(UriTemplate uriTemplate, Object...uriParams) {
+        super(uriTemplate, uriParams);
+    }
     
     public HttpDelete() {}
     
@@ -25,6 +25,10 @@ public class HttpGet extends HttpRequest {
         super(uri, uriParams);
     }
 
+    public HttpGet(UriTemplate uriTemplate, Object...uriParams) {
+        super(uriTemplate, uriParams);
+    }
+
     public HttpGet() {}
     
     @Override
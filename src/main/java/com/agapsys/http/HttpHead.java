@@ -24,6 +24,10 @@ public class HttpHead extends HttpRequest {
     public HttpHead(String uri, Object...uriParams) {
         super(uri, uriParams);
     }
+
+    public HttpHead(UriTemplate uriTemplate, Object...uriParams) {
+        super(uriTemplate, uriParams);
+    }
     
     public HttpHead() {}
     
@@ -24,6 +24,10 @@ public class HttpOptions extends HttpRequest {
     public HttpOptions(String uri, Object...uriParams) {
         super(uri, uriParams);
     }
+
+    public HttpOptions(UriTemplate uriTemplate, Object...uriParams) {
+        super(uriTemplate, uriParams);
+    }
     
     public HttpOptions() {}
     
@@ -18,15 +18,27 @@ package com.agapsys.http;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.net.URLEncoder;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
 
-/** Represents an HTTP request. */
+/**
+ * Represents an HTTP request.
+ * Executing a request does not modify it, so the same instance can be executed concurrently.
+ */
 public abstract class HttpRequest {
-    private String uri;
-    private HttpRequestBase coreRequest = null;
+    private final List<HttpHeader> headers = new CopyOnWriteArrayList<>();
+
+    private volatile String uri;
+    private volatile HttpRequestBase coreRequest = null;
+    private final ThreadLocal<HttpRequestBase> sendingRequest = new ThreadLocal<>();
+    private volatile Boolean responseDecompression = null;
         
     /** 
      * Constructor.
@@ -38,31 +50,46 @@ public abstract class HttpRequest {
             throw new IllegalArgumentException("Null/Empty URI");
         
         if (uriParams.length > 0) {
-            for (int i = 0; i < uriParams.length; i++) {
+            Object[] params = uriParams.clone(); // Caller's array is left untouched
 
-                if (uriParams[i] instanceof String) {
+            for (int i = 0; i < params.length; i++) {
+
+                if (params[i] instanceof String) {
                     try {
-                        uriParams[i] = URLEncoder.encode((String) uriParams[i], "utf-8");
+                        params[i] = URLEncoder.encode((String) params[i], "utf-8");
                     } catch (UnsupportedEncodingException ex) {
                         throw new RuntimeException(ex);
                     }
                 }
             }
-            uri = String.format(uri, uriParams);
+            uri = String.format(uri, params);
         }
         this.uri = uri;
     }
+
+    /**
+     * Constructor.
+     * Prefer this constructor over {@link #HttpRequest(String, Object...)} when the same URI pattern is used
+     * repeatedly, since compiled templates are expanded without being parsed again.
+     * @param uriTemplate request URI template
+     * @param uriParams values of template variables in order of first appearance (see {@link UriTemplate#expand(Object...)}).
+     */
+    public HttpRequest(UriTemplate uriTemplate, Object...uriParams) {
+        if (uriTemplate == null)
+            throw new IllegalArgumentException("Null URI template");
+
+        String uri = uriTemplate.expand(uriParams);
+        if (uri.trim().isEmpty())
+            throw new IllegalArgumentException("Null/Empty URI");
+
+        this.uri = uri;
+    }
     
     public HttpRequest() {}
     
     @Override
     public String toString() {
-        boolean coreRequestWasNull = (coreRequest == null);
-        String str = String.format("%s %s", getMethod(), getUri());
-        if (coreRequestWasNull)
-            coreRequest = null;
-        
-        return str;
+        return String.format("%s %s", getMethod(), getUri());
     }
     
     /**
@@ -79,6 +106,7 @@ public abstract class HttpRequest {
     public void setUri(String uri) {
         if (uri == null || uri.trim().isEmpty()) throw new IllegalArgumentException("Null/Empty URI");
         this.uri = uri;
+        this.coreRequest = null;
     }
     
     /**
@@ -90,19 +118,51 @@ public abstract class HttpRequest {
     
     /** 
      * Called before the request is sent.
+     * While this method runs, {@link #getCoreRequest()} returns the instance which will be sent and headers added
+     * through {@link #addHeader(String, String)} are added to that instance, so changes are applied to current execution only.
      * Default implementation does nothing.
      */
     protected void beforeSend() {}
     
+    /**
+     * Called before the request is sent with the instance which will be sent.
+     * Default implementation calls {@link #beforeSend()} with {@link #getCoreRequest()} returning given instance.
+     * @param wireRequest request instance created for current execution.
+     */
+    protected void beforeSend(HttpRequestBase wireRequest) {
+        HttpRequestBase previous = sendingRequest.get();
+        sendingRequest.set(wireRequest);
+
+        try {
+            beforeSend();
+        } finally {
+            if (previous == null)
+                sendingRequest.remove();
+            else
+                sendingRequest.set(previous);
+        }
+    }
+    
     /**
      * Returns wrapped request instance.
+     * Returned instance is used only to inspect this request. Each execution sends a new instance, which is the one
+     * returned by this method while {@link #beforeSend()} runs.
      * @return wrapped request instance.
      */
     protected final HttpRequestBase getCoreRequest() {
-        if (coreRequest == null)
-            coreRequest = getCoreRequest(uri);
+        HttpRequestBase request = sendingRequest.get();
+
+        if (request != null)
+            return request;
+
+        request = coreRequest;
+        
+        if (request == null) {
+            request = getCoreRequest(uri);
+            coreRequest = request;
+        }
         
-        return coreRequest;
+        return request;
     }
     
     /**
@@ -113,13 +173,81 @@ public abstract class HttpRequest {
         return getCoreRequest().getMethod();
     }
     
+    /**
+     * Returns the compression applied to the body of this request.
+     * @return the compression applied to the body of this request or null if client setting is used.
+     */
+    Compression getBodyCompression() {
+        return null;
+    }
+
+    /**
+     * Returns an immutable snapshot of this request.
+     * Headers (including the ones added by {@link #beforeSend(HttpRequestBase)}) are merged and the body is encoded
+     * once, so returned instance can be executed any number of times, concurrently, without encoding costs.
+     * Client default headers are still added on each execution. Changes made to this request afterwards do not
+     * affect returned instance.
+     * @return prepared request.
+     * @throws IOException if request body could not be encoded.
+     * @throws IllegalStateException if request body can be sent only once (e.g. it is read from a stream).
+     */
+    public PreparedRequest prepare() throws IOException {
+        return new PreparedRequest(this);
+    }
+
+    /**
+     * Returns a key identifying the target of this request (scheme, host and port).
+     * @return target key or an empty string if URI is invalid.
+     */
+    String getTargetKey() {
+        return getTargetKey(uri);
+    }
+
+    /**
+     * Returns a key identifying the target of given URI (scheme, host and port).
+     * @param uri absolute URI
+     * @return target key or an empty string if URI is invalid.
+     */
+    static String getTargetKey(String uri) {
+        try {
+            URI target = URI.create(uri);
+            return target.getScheme() + "://" + target.getHost() + ":" + target.getPort();
+        } catch (RuntimeException ex) {
+            return ""; // Invalid URIs fail when executed
+        }
+    }
+
+    /**
+     * Returns the decompression setting of this request.
+     * @return a boolean indicating if compressed responses are requested and decompressed or null if client setting is used.
+     */
+    public Boolean getResponseDecompression() {
+        return responseDecompression;
+    }
+
+    /**
+     * Defines if compressed responses are requested and decompressed for this request.
+     * @param responseDecompression true to decompress responses, false to receive them as sent by the server or null to use client setting (see {@link HttpClient#setResponseDecompressionEnabled(boolean)}).
+     */
+    public void setResponseDecompression(Boolean responseDecompression) {
+        this.responseDecompression = responseDecompression;
+    }
+
     /**
      * Adds given header to the request
+     * When called from {@link #beforeSend()}, header is sent only on current execution.
      * @param name header name
      * @param value header value
      */
     public void addHeader(String name, String value) {
-        getCoreRequest().addHeader(name, value);
+        HttpHeader header = new HttpHeader(name, value);
+        HttpRequestBase wireRequest = sendingRequest.get();
+
+        if (wireRequest != null) {
+            wireRequest.addHeader(header);
+        } else {
+            headers.add(header);
+        }
     }
 
     /**
@@ -145,22 +273,55 @@ public abstract class HttpRequest {
      * @return all headers associated to this request. 
      */
     public List<HttpHeader> getHeaders() {
-        List<HttpHeader> headerList = new LinkedList<>();
-        
-        org.apache.http.Header[] wrappedHeaders = getCoreRequest().getAllHeaders();
-        for (org.apache.http.Header wrappedHeader : wrappedHeaders) {
-            headerList.add(new HttpHeader(wrappedHeader.getName(), wrappedHeader.getValue()));
-        }
-        
-        return headerList;
+        return new ArrayList<>(headers);
     }
 
     /** Removes all headers. */
     public void clearHeaders() {
-        org.apache.http.Header[] wrappedHeaders = getCoreRequest().getAllHeaders();
-        for (org.apache.http.Header wrappedHeader : wrappedHeaders) {
-            getCoreRequest().removeHeader(wrappedHeader);
+        headers.clear();
+    }
+
+    /**
+     * Returns the live list of headers of this request.
+     * Returned list must not be modified.
+     * @return the live list of headers of this request.
+     */
+    final List<HttpHeader> getHeaderList() {
+        return headers;
+    }
+
+    /**
+     * Creates the request instance to be sent in a single execution.
+     * @param defaultHeaders headers to be sent before the headers of this request.
+     * @return request instance to be sent.
+     */
+    final HttpRequestBase createWireRequest(List<HttpHeader> defaultHeaders) {
+        return createWireRequest(defaultHeaders, Collections.<HttpHeader>emptyList());
+    }
+
+    /**
+     * Creates the request instance to be sent in a single execution.
+     * @param defaultHeaders headers to be sent before the headers of this request.
+     * @param extraHeaders headers to be sent after the headers of this request.
+     * @return request instance to be sent.
+     */
+    final HttpRequestBase createWireRequest(List<HttpHeader> defaultHeaders, List<HttpHeader> extraHeaders) {
+        HttpRequestBase wireRequest = getCoreRequest(uri);
+        
+        for (HttpHeader header : defaultHeaders) {
+            wireRequest.addHeader(header);
+        }
+        
+        for (HttpHeader header : headers) {
+            wireRequest.addHeader(header);
         }
+        
+        for (HttpHeader header : extraHeaders) {
+            wireRequest.addHeader(header);
+        }
+        
+        beforeSend(wireRequest);
+        return wireRequest;
     }
 
     /**
@@ -172,35 +333,44 @@ public abstract class HttpRequest {
     public HttpResponse execute(HttpClient client) throws IOException {
         if (client == null)
             throw new IllegalArgumentException("Null client");
-                
-        List<HttpHeader> defaultHeaders = client.getDefaultHeaders();
-        List<HttpHeader> requestHeaders = getHeaders();
-        
-        if (!defaultHeaders.isEmpty()) {
-            // Adds default headers...
-            clearHeaders();
-            
-            for (HttpHeader header : defaultHeaders) {
-                addHeaders(header);
-            }
-            
-            for (HttpHeader header : requestHeaders) {
-                addHeaders(header);
-            }
-        }
         
-        beforeSend();
-        HttpResponse resp = new HttpResponse(client.getWrappedClient().execute(getCoreRequest()));
+        return client.execute(this);
+    }
+
+    /**
+     * Executes this request without blocking the calling thread.
+     * @param client client used in this request
+     * @param callback optional callback notified when execution finishes
+     * @return future server response
+     * @throws IOException if there was an I/O error while initializing asynchronous execution. 
+     */
+    public Future<HttpResponse> executeAsync(HttpClient client, FutureCallback<HttpResponse> callback) throws IOException {
+        if (client == null)
+            throw new IllegalArgumentException("Null client");
         
-        if (!defaultHeaders.isEmpty()) {
-            // Restore request headers...
-            clearHeaders();
-            
-            for (HttpHeader header : requestHeaders) {
-                addHeaders(header);
-            }
-        }
+        return client.executeAsync(this, callback);
+    }
+
+    /**
+     * Executes this request without blocking the calling thread.
+     * @param client client used in this request
+     * @return future server response
+     * @throws IOException if there was an I/O error while initializing asynchronous execution. 
+     */
+    public Future<HttpResponse> executeAsync(HttpClient client) throws IOException {
+        return executeAsync(client, null);
+    }
+
+    /**
+     * Executes this request through the blocking path on a thread managed by given client.
+     * On Java 21+ requests are run on virtual threads.
+     * @param client client used in this request
+     * @return future server response
+     */
+    public Future<HttpResponse> submit(HttpClient client) {
+        if (client == null)
+            throw new IllegalArgumentException("Null client");
         
-        return resp;
+        return client.submit(this);
     }
 }
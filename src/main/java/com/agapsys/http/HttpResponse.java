@@ -16,70 +16,157 @@
 
 package com.agapsys.http;
 
+import com.agapsys.http.utils.IOUtils;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.ParseException;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.entity.ContentType;
 
 /** *  Represents a response to a {@link HttpRequest} */
 public class HttpResponse {
     // CLASS SCOPE =============================================================
-    /** String representation of a response. */
+    /**
+     * String representation of a response.
+     * Content is kept once as bytes and decoded on first call to {@link #getContentString()}.
+     * Content with unknown length is read into buffers borrowed from the client and copied once into an array of the
+     * exact size.
+     */
     public static final class StringResponse extends HttpResponse {
-        private final String content;
-        private final String charset;
-        private final InputStream contentInputStream;
+        private static final int DEFAULT_BUFFER_SIZE = 4 * 1024;
+        private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+        private final byte[] content;
         private final int contentLength;
+        private final Charset charset;
 
-        private StringResponse(HttpResponse response, String charset, long maxLength) throws IOException {
+        private volatile String contentString = null;
+
+        private StringResponse(HttpResponse response, String charset, long maxLength, BufferPool pool) throws IOException {
             super(response.getWrappedResponse());
-            content = consumeEntity(maxLength);
-            this.charset = charset;
 
-            byte[] contentBytes = content.getBytes(charset);
-            contentInputStream = new ByteArrayInputStream(contentBytes);
-            this.contentLength = contentBytes.length;
+            HttpEntity entity = getWrappedResponse().getEntity();
+            this.charset = getCharset(entity, charset);
+
+            if (entity == null) {
+                content = null;
+                contentLength = 0;
+            } else {
+                long declaredLength = entity.getContentLength();
+                if (maxLength >= 0 && declaredLength > maxLength)
+                    throw new IOException(String.format("entity length (%d) is greater than maximum allowed length (%d)", declaredLength, maxLength));
+
+                // Content with known length is read straight into the array kept by this instance
+                ByteBuffer pooled = declaredLength < 0 || declaredLength > MAX_ARRAY_SIZE ? pool.acquire(DEFAULT_BUFFER_SIZE) : null;
+
+                byte[] buffer = pooled != null ? pooled.array() : new byte[(int) declaredLength];
+                int length = 0;
+
+                try (InputStream in = entity.getContent()) {
+                    while (true) {
+                        if (length == buffer.length) {
+                            // Buffer is full: grows only if there is more content
+                            int next = in.read();
+                            if (next == -1)
+                                break;
+
+                            if (pooled != null) {
+                                ByteBuffer larger = buffer.length < BufferPool.MAX_BUFFER_SIZE ? pool.acquire(buffer.length * 2) : null;
+                                byte[] grown = larger != null ? larger.array() : grow(buffer, maxLength);
+
+                                System.arraycopy(buffer, 0, grown, 0, length);
+                                pool.release(pooled);
+                                pooled = larger;
+                                buffer = grown;
+                            } else {
+                                buffer = grow(buffer, maxLength);
+                            }
+
+                            buffer[length++] = (byte) next;
+                        } else {
+                            int read = in.read(buffer, length, buffer.length - length);
+                            if (read == -1)
+                                break;
+
+                            length += read;
+                        }
+
+                        if (maxLength >= 0 && length > maxLength)
+                            throw new IOException(String.format("entity length is greater than maximum allowed length (%d)", maxLength));
+                    }
+
+                    // Pooled buffers go back to the pool and grown ones may be twice as large as the content
+                    if (pooled != null || buffer.length != length)
+                        buffer = Arrays.copyOf(buffer, length);
+                } finally {
+                    if (pooled != null)
+                        pool.release(pooled);
+                }
+
+                content = buffer;
+                contentLength = length;
+            }
+        }
+
+        /**
+         * Returns the charset used to decode the content.
+         * @param entity response entity
+         * @param charset requested charset. If null, entity charset (or ISO-8859-1) is used.
+         * @return the charset used to decode the content.
+         */
+        private static Charset getCharset(HttpEntity entity, String charset) {
+            if (charset != null)
+                return Charset.forName(charset);
+
+            Charset declaredCharset = getDeclaredCharset(entity);
+            return declaredCharset != null ? declaredCharset : StandardCharsets.ISO_8859_1;
         }
 
         /**
-        * Consumes entity content and returns its string representation
-        * @return response content string representation
-        * @param maxLength maximum accepted content-length
-        * @throws IOException if there was an I/O error while processing the response.
-        */
-        private String consumeEntity(long maxLength) throws IOException {
-           HttpEntity entity = getWrappedResponse().getEntity();
-           String responseBody = null;
-
-           if (entity != null) {
-               long length = entity.getContentLength();
-               if (maxLength == -1 || length <= maxLength) {
-                   responseBody = EntityUtils.toString(entity);
-               } else {
-                   throw new IOException(String.format("entity length (%d) is greater than maximum allowed length (%d)", length, maxLength));
-               }
-           }
-
-           return responseBody;
-       }
+         * Returns a larger copy of given buffer.
+         * @param buffer full buffer
+         * @param maxLength maximum accepted content length (or -1)
+         * @return a larger copy of given buffer.
+         * @throws IOException if buffer cannot grow anymore.
+         */
+        private static byte[] grow(byte[] buffer, long maxLength) throws IOException {
+            if (buffer.length >= MAX_ARRAY_SIZE)
+                throw new IOException("entity is too large to be kept in memory");
+
+            long newSize = Math.max((long) buffer.length * 2, DEFAULT_BUFFER_SIZE);
+
+            if (maxLength >= 0)
+                newSize = Math.min(newSize, maxLength + 1); // one extra byte detects oversized content
+
+            return Arrays.copyOf(buffer, (int) Math.min(newSize, MAX_ARRAY_SIZE));
+        }
 
         public String getCharset() {
-            return charset;
+            return charset.name();
         }
 
         @Override
         public InputStream getContentInputStream() throws IOException {
-            return contentInputStream;
+            return new ByteArrayInputStream(content == null ? new byte[0] : content, 0, contentLength);
         }
 
         @Override
@@ -88,21 +175,60 @@ public class HttpResponse {
         }
 
         public String getContentString() {
-            return content;
+            if (content == null)
+                return null;
+
+            String str = contentString;
+            if (str == null) {
+                str = new String(content, 0, contentLength, charset);
+                contentString = str;
+            }
+
+            return str;
         }
     }
 
+    /**
+     * Returns the charset declared by the content type of given entity.
+     * @param entity response entity (may be null)
+     * @return declared charset or null if there is no entity, no declared charset or declared charset is not supported.
+     */
+    private static Charset getDeclaredCharset(HttpEntity entity) {
+        if (entity != null) {
+            try {
+                ContentType contentType = ContentType.get(entity);
+                if (contentType != null)
+                    return contentType.getCharset();
+            } catch (ParseException | UnsupportedCharsetException ignored) {}
+        }
+
+        return null;
+    }
+
     /**
      * Executes given request, consume the response and returns a string representation of it.
      * @param request HTTP request to be executed
-     * @param respCharset response string charset
+     * @param respCharset response string charset. If null, the charset declared by the response (or ISO-8859-1) is used
      * @param maxLength maximum accepted response length. If response is bigger than such length, an I/O error will be generated
      * @return string representation of resulting response
      * @throws IOException if there is an I/O error while processing the request/response
      */
     public static StringResponse getStringResponse(HttpRequest request, String respCharset, long maxLength) throws IOException {
         HttpClient client = new HttpClient();
-        StringResponse response = getStringResponse(client, request, respCharset, maxLength);
+        StringResponse response;
+
+        try {
+            response = getStringResponse(client, request, respCharset, maxLength);
+        } catch (IOException | RuntimeException ex) {
+            try {
+                client.close();
+            } catch (IOException closeEx) {
+                ex.addSuppressed(closeEx); // e.g. client was not initialized because request failed before being sent
+            }
+
+            throw ex;
+        }
+
         client.close();
         return response;
     }
@@ -111,24 +237,27 @@ public class HttpResponse {
      * Executes given request, consume the response and returns a string representation of it.
      * @param client client used to execute the request.
      * @param request HTTP request to be executed
-     * @param respCharset response string charset
+     * @param respCharset response string charset. If null, the charset declared by the response (or ISO-8859-1) is used
      * @param maxLength maximum accepted response length. If response is bigger than such length, an I/O error will be generated
      * @return string representation of resulting response
      * @throws IOException if there is an I/O error while processing the request/response
      */
     public static StringResponse getStringResponse(HttpClient client, HttpRequest request, String respCharset, long maxLength) throws IOException {
         HttpResponse response = request.execute(client);
-        StringResponse strResp = new StringResponse(response, respCharset, maxLength);
-        response.close();
-        return strResp;
+
+        try {
+            return new StringResponse(response, respCharset, maxLength, client.getBufferPool());
+        } finally {
+            response.close();
+        }
     }
     // =========================================================================
 
     // INSTANCE SCOPE ==========================================================
     private final CloseableHttpResponse wrappedResponse;
 
-    private List<HttpHeader>        headers   = null;
-    private Map<String, HttpCookie> cookieMap = null;
+    private HeaderIndex             headerIndex = null;
+    private Map<String, HttpCookie> cookieMap   = null;
 
     /**
      * Constructor.
@@ -166,12 +295,104 @@ public class HttpResponse {
         return entity.getContent();
     }
 
+    /**
+     * Decodes response content into an object.
+     * Content is read straight from {@link #getContentInputStream()} (already decompressed), so it is never held
+     * as a string or a byte array by this class. Stream is closed after decoding; the response itself is not.
+     * @param <T> object type
+     * @param codec codec used to decode the content
+     * @param type object type
+     * @return decoded object or null if response has no content.
+     * @throws IOException if there was an I/O error while reading the content or if content is invalid.
+     */
+    public <T> T getContent(BodyCodec codec, Class<T> type) throws IOException {
+        if (codec == null)
+            throw new IllegalArgumentException("Null codec");
+
+        if (type == null)
+            throw new IllegalArgumentException("Null type");
+
+        HttpEntity entity = wrappedResponse.getEntity();
+        if (entity == null)
+            return null;
+
+        Charset charset = getDeclaredCharset(entity);
+
+        try (InputStream in = getContentInputStream()) {
+            return codec.decode(in, charset == null ? null : charset.name(), type);
+        }
+    }
+
+    /**
+     * Streams response content into given output stream.
+     * Content is copied through a small reusable buffer and is never fully loaded in memory.
+     * Given stream is not closed.
+     * @param out destination stream
+     * @return number of written bytes
+     * @throws IOException if there was an I/O error while processing the response.
+     */
+    public long writeContentTo(OutputStream out) throws IOException {
+        if (out == null)
+            throw new IllegalArgumentException("Null output stream");
+
+        if (wrappedResponse.getEntity() == null)
+            return 0;
+
+        try (InputStream in = getContentInputStream()) {
+            return IOUtils.copy(in, out);
+        }
+    }
+
+    /**
+     * Streams response content into given channel.
+     * If given channel is a {@linkplain FileChannel}, content is transferred with {@linkplain FileChannel#transferFrom(java.nio.channels.ReadableByteChannel, long, long)}.
+     * Responses served by a {@link ResponseCache} are written straight from the cached buffer.
+     * Given channel is not closed.
+     * @param channel destination channel
+     * @return number of written bytes
+     * @throws IOException if there was an I/O error while processing the response.
+     */
+    public long writeContentTo(WritableByteChannel channel) throws IOException {
+        if (channel == null)
+            throw new IllegalArgumentException("Null channel");
+
+        HttpEntity entity = wrappedResponse.getEntity();
+        if (entity == null)
+            return 0;
+
+        if (entity instanceof ChannelEntity)
+            return ((ChannelEntity) entity).writeTo(channel);
+
+        try (InputStream in = getContentInputStream()) {
+            return IOUtils.copy(in, channel);
+        }
+    }
+
+    /**
+     * Streams response content into given file.
+     * File is created if it does not exist and truncated otherwise.
+     * @param path destination file
+     * @return number of written bytes
+     * @throws IOException if there was an I/O error while processing the response or writing the file.
+     */
+    public long writeContentTo(Path path) throws IOException {
+        if (path == null)
+            throw new IllegalArgumentException("Null path");
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return writeContentTo(channel);
+        }
+    }
+
     /**
      * Returns content encoding.
-     * @return content encoding.
+     * Responses decompressed by the client (see {@link HttpClient#setResponseDecompressionEnabled(boolean)}) have no content encoding.
+     * @return content encoding or null if content is not encoded.
      */
     public String getContentEncoding() {
-        return wrappedResponse.getEntity().getContentEncoding().getValue();
+        HttpEntity entity = wrappedResponse.getEntity();
+        Header contentEncoding = entity == null ? null : entity.getContentEncoding();
+        return contentEncoding == null ? null : contentEncoding.getValue();
     }
 
     /**
@@ -182,25 +403,29 @@ public class HttpResponse {
         return wrappedResponse.getEntity().getContentLength();
     }
 
+    /**
+     * Returns the cookie with given name sent by the server.
+     * @param name cookie name
+     * @return the cookie with given name or null if there is no such cookie.
+     */
     public HttpCookie getCookie(String name) {
-        if (cookieMap == null) {
-            cookieMap = new LinkedHashMap<>();
+        Map<String, HttpCookie> map = cookieMap;
 
-            for (Header header : wrappedResponse.getAllHeaders()) {
-                if (header.getName().toLowerCase().equals("set-cookie")) {
-                    HttpCookie cookie = cookieMap.get(name);
+        if (map == null) {
+            Map<String, HttpCookie> cookies = new LinkedHashMap<>();
 
-                    if (cookie == null) {
-                        cookie = new HttpCookie();
-                        cookieMap.put(name, cookie);
-                    }
+            for (HttpHeader header : getHeaders("Set-Cookie")) {
+                HttpCookie cookie = HttpCookie.parse(header.getValue());
 
-                    cookie._setValues(header.getValue());
-                }
+                if (cookie != null)
+                    cookies.put(cookie.name, cookie);
             }
+
+            map = Collections.unmodifiableMap(cookies);
+            cookieMap = map;
         }
 
-        return cookieMap.get(name);
+        return map.get(name);
     }
 
     /**
@@ -228,19 +453,28 @@ public class HttpResponse {
         return String.format("%s.%s", pv.getMajor(), pv.getMinor());
     }
 
+    /**
+     * Returns the header index of this response, building it on first use.
+     * @return the header index of this response.
+     */
+    private HeaderIndex getHeaderIndex() {
+        HeaderIndex index = headerIndex;
+
+        if (index == null) {
+            index = new HeaderIndex(wrappedResponse.getAllHeaders());
+            headerIndex = index;
+        }
+
+        return index;
+    }
+
     /**
      * Returns the first header with given name
-     * @param name header name
+     * @param name header name (case-insensitive)
      * @return first header with given name identified in the response or null if there is no such header
      */
     public HttpHeader getFirstHeader(String name) {
-        for (HttpHeader header : getHeaders()) {
-            if (header.getName().equals(name)) {
-                return header;
-            }
-        }
-
-        return null;
+        return getHeaderIndex().getFirst(name);
     }
 
     /**
@@ -248,34 +482,16 @@ public class HttpResponse {
      * @return all the headers of this message.
      */
     public List<HttpHeader> getHeaders() {
-        if (headers == null) {
-            org.apache.http.Header[] wrappedHeaders = wrappedResponse.getAllHeaders();
-            List<HttpHeader> _headers = new LinkedList<>();
-            for (org.apache.http.Header wrappedHeader : wrappedHeaders) {
-                _headers.add(new HttpHeader(wrappedHeader.getName(), wrappedHeader.getValue()));
-            }
-            headers = Collections.unmodifiableList(_headers);
-        }
-
-
-        return headers;
+        return getHeaderIndex().getAll();
     }
 
     /**
      * Returns all headers with given name.
-     * @param name header name
+     * @param name header name (case-insensitive)
      * @return list of header with given name
      */
     public List<HttpHeader> getHeaders(String name) {
-        List<HttpHeader> filteredHeaders = new LinkedList<>();
-
-        for (HttpHeader header : getHeaders()) {
-            if (header.getName().equals(name)) {
-                filteredHeaders.add(header);
-            }
-        }
-
-        return Collections.unmodifiableList(filteredHeaders);
+        return getHeaderIndex().get(name);
     }
 
     /**
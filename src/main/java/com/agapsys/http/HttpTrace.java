@@ -24,6 +24,10 @@ public class HttpTrace extends HttpRequest {
     public HttpTrace(String uri, Object...uriParams) {
         super(uri, uriParams);
     }
+
+    public HttpTrace(UriTemplate uriTemplate, Object...uriParams) {
+        super(uriTemplate, uriParams);
+    }
     
     public HttpTrace() {}
     
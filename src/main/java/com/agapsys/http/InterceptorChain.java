@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Execution passed through the interceptors of a client.
+ * A single instance is used for the whole chain: the position of the current interceptor (and headers it adds) are
+ * restored once it returns, so an interceptor can proceed more than once.
+ */
+final class InterceptorChain implements RequestInterceptor.Chain {
+    private final HttpClient           client;
+    private final RequestInterceptor[] interceptors;
+    private final HttpRequest          request;
+    private final List<HttpHeader>     extraHeaders;
+
+    private List<HttpHeader> headers = null;
+    private int              index   = 0;
+
+    InterceptorChain(HttpClient client, RequestInterceptor[] interceptors, HttpRequest request, List<HttpHeader> extraHeaders) {
+        this.client       = client;
+        this.interceptors = interceptors;
+        this.request      = request;
+        this.extraHeaders = extraHeaders;
+    }
+
+    @Override
+    public HttpClient getClient() {
+        return client;
+    }
+
+    @Override
+    public HttpRequest getRequest() {
+        return request;
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        HttpHeader header = new HttpHeader(name, value);
+
+        if (headers == null)
+            headers = new ArrayList<>(extraHeaders);
+
+        headers.add(header);
+    }
+
+    @Override
+    public HttpResponse proceed() throws IOException {
+        int current = index;
+
+        if (current == interceptors.length)
+            return client.transmit(request, headers == null ? extraHeaders : headers);
+
+        int headerCount = headers == null ? extraHeaders.size() : headers.size();
+        index = current + 1;
+
+        try {
+            HttpResponse response = interceptors[current].intercept(this);
+
+            if (response == null)
+                throw new IllegalStateException("Null response returned by interceptor: " + interceptors[current]);
+
+            return response;
+        } finally {
+            index = current;
+
+            if (headers != null) {
+                while (headers.size() > headerCount) {
+                    headers.remove(headers.size() - 1);
+                }
+            }
+        }
+    }
+}
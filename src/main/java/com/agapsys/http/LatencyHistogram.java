@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets (four buckets per power of two, so values are resolved within
+ * 25%). A decaying histogram halves its counts periodically so percentiles follow recent behavior.
+ */
+final class LatencyHistogram {
+    // CLASS SCOPE =============================================================
+    private static final int SUB_BUCKETS = 4;
+    static final int BUCKETS             = SUB_BUCKETS * 40; // Up to 2^40 microseconds (~12 days)
+
+    /** Number of samples after which counts are halved. */
+    private static final int DECAY_INTERVAL = 1024;
+
+    static int getBucket(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) Math.max(0, micros);
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) ((micros >>> (exponent - 2)) & (SUB_BUCKETS - 1));
+        return Math.min(BUCKETS - 1, (exponent - 1) * SUB_BUCKETS + subBucket);
+    }
+
+    /**
+     * Returns the upper bound (exclusive) of given bucket.
+     * @param bucket bucket index
+     * @return upper bound in microseconds.
+     */
+    static long getUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket + 1;
+
+        int exponent = bucket / SUB_BUCKETS + 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+        return lower + (1L << (exponent - 2));
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final AtomicLongArray counts   = new AtomicLongArray(BUCKETS);
+    private final AtomicLong      total    = new AtomicLong();
+    private final AtomicLong      samples  = new AtomicLong();
+    private final AtomicLong      sum      = new AtomicLong();
+    private final AtomicBoolean   decaying = new AtomicBoolean();
+    private final boolean         decay;
+
+    /** Creates a decaying histogram. */
+    LatencyHistogram() {
+        this(true);
+    }
+
+    /**
+     * Constructor.
+     * @param decay defines if counts are halved periodically.
+     */
+    LatencyHistogram(boolean decay) {
+        this.decay = decay;
+    }
+
+    /**
+     * Records a latency.
+     * @param micros latency in microseconds.
+     */
+    void record(long micros) {
+        counts.incrementAndGet(getBucket(micros));
+        total.incrementAndGet();
+
+        if (!decay) {
+            sum.addAndGet(Math.max(0, micros));
+            return;
+        }
+
+        if (samples.incrementAndGet() % DECAY_INTERVAL == 0 && decaying.compareAndSet(false, true)) {
+            try {
+                // Concurrent increments may be halved too: percentiles are approximations anyway
+                for (int i = 0; i < BUCKETS; i++) {
+                    long count;
+                    do {
+                        count = counts.get(i);
+                    } while (count > 0 && !counts.compareAndSet(i, count, count - count / 2));
+
+                    if (count > 0)
+                        total.addAndGet(-(count / 2));
+                }
+            } finally {
+                decaying.set(false);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of samples currently weighted by this histogram.
+     * @return weighted number of samples.
+     */
+    long getCount() {
+        return total.get();
+    }
+
+    /**
+     * Returns the given percentile of recorded latencies.
+     * @param percentile percentile (0 - 100)
+     * @return percentile upper bound in microseconds or -1 if there are no samples.
+     */
+    long getPercentile(double percentile) {
+        long count = total.get();
+        if (count <= 0)
+            return -1;
+
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+
+            if (seen >= rank)
+                return getUpperBound(i);
+        }
+
+        return getUpperBound(BUCKETS - 1);
+    }
+
+    /**
+     * Returns a snapshot of this histogram.
+     * Snapshot is taken without blocking writers, so samples recorded concurrently may be partially included.
+     * @return a snapshot of this histogram. Sum of latencies is only tracked by non-decaying histograms.
+     */
+    HistogramSnapshot snapshot() {
+        long[] snapshot = new long[BUCKETS];
+
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+
+        return new HistogramSnapshot(snapshot, sum.get());
+    }
+    // =========================================================================
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Heap store keeping one response per key, bounded by the number of bytes it holds.
+ * Least recently used entries are evicted first.
+ */
+final class MemoryCacheStore implements CacheStore {
+    private final long maxSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+
+    MemoryCacheStore(long maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("Invalid max size: " + maxSize);
+
+        this.maxSize = maxSize;
+    }
+
+    private static long sizeOf(String key, CachedResponse response) {
+        return response.getSize() + 2 * key.length();
+    }
+
+    @Override
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public CachedResponse get(String key, HttpRequest request, List<HttpHeader> defaultHeaders) {
+        CachedResponse response;
+
+        lock.lock();
+        try {
+            response = entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+
+        return response != null && response.matches(request, defaultHeaders) ? response : null;
+    }
+
+    @Override
+    public void put(String key, CachedResponse response) {
+        lock.lock();
+        try {
+            CachedResponse previous = entries.put(key, response);
+            if (previous != null)
+                size -= sizeOf(key, previous);
+
+            size += sizeOf(key, response);
+
+            Iterator<Map.Entry<String, CachedResponse>> iterator = entries.entrySet().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                Map.Entry<String, CachedResponse> eldest = iterator.next();
+                size -= sizeOf(eldest.getKey(), eldest.getValue());
+                iterator.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        lock.lock();
+        try {
+            CachedResponse previous = entries.remove(key);
+            if (previous != null)
+                size -= sizeOf(key, previous);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getSize() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getEntryCount() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.util.List;
+
+/**
+ * Receives request metrics periodically exported by a {@link HttpClient}
+ * (see {@link HttpClient#setMetricsExporter(MetricsExporter, long)}).
+ * Exports are made by a single background thread, so implementations are not called concurrently by the same client.
+ */
+public interface MetricsExporter {
+
+    /**
+     * Exports given metrics.
+     * Recorded latencies are cumulative: each export contains every sample recorded since metrics were enabled (or last reset).
+     * @param metrics snapshot of request metrics, one entry per target host and method.
+     */
+    void export(List<RequestMetrics> metrics);
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.http.HttpHost;
+
+/**
+ * Keeps phase latency histograms of request executions keyed by target host and method.
+ * Lookups do not allocate once a host/method pair is known.
+ */
+final class MetricsRecorder {
+    // CLASS SCOPE =============================================================
+    private static final RequestPhase[] PHASES = RequestPhase.values();
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final ConcurrentHashMap<HttpHost, ConcurrentHashMap<String, LatencyHistogram[]>> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the histograms (indexed by {@linkplain RequestPhase#ordinal() phase ordinal}) of given host and method.
+     * @param host target host
+     * @param method request method
+     * @return the histograms of given host and method.
+     */
+    LatencyHistogram[] getHistograms(HttpHost host, String method) {
+        ConcurrentHashMap<String, LatencyHistogram[]> hostHistograms = histograms.get(host);
+
+        if (hostHistograms == null) {
+            ConcurrentHashMap<String, LatencyHistogram[]> newHostHistograms = new ConcurrentHashMap<>();
+            hostHistograms = histograms.putIfAbsent(host, newHostHistograms);
+
+            if (hostHistograms == null)
+                hostHistograms = newHostHistograms;
+        }
+
+        LatencyHistogram[] methodHistograms = hostHistograms.get(method);
+
+        if (methodHistograms == null) {
+            LatencyHistogram[] newMethodHistograms = new LatencyHistogram[PHASES.length];
+
+            for (int i = 0; i < newMethodHistograms.length; i++) {
+                newMethodHistograms[i] = new LatencyHistogram(false);
+            }
+
+            methodHistograms = hostHistograms.putIfAbsent(method, newMethodHistograms);
+
+            if (methodHistograms == null)
+                methodHistograms = newMethodHistograms;
+        }
+
+        return methodHistograms;
+    }
+
+    /**
+     * Returns a snapshot of recorded metrics.
+     * @return a snapshot of recorded metrics, one entry per host and method.
+     */
+    List<RequestMetrics> snapshot() {
+        List<RequestMetrics> snapshot = new ArrayList<>();
+
+        for (Map.Entry<HttpHost, ConcurrentHashMap<String, LatencyHistogram[]>> hostEntry : histograms.entrySet()) {
+            String host = hostEntry.getKey().toURI();
+
+            for (Map.Entry<String, LatencyHistogram[]> methodEntry : hostEntry.getValue().entrySet()) {
+                Map<RequestPhase, HistogramSnapshot> phases = new EnumMap<>(RequestPhase.class);
+
+                for (RequestPhase phase : PHASES) {
+                    phases.put(phase, methodEntry.getValue()[phase.ordinal()].snapshot());
+                }
+
+                snapshot.add(new RequestMetrics(host, methodEntry.getKey(), phases));
+            }
+        }
+
+        return snapshot;
+    }
+
+    /** Discards all recorded metrics. */
+    void clear() {
+        histograms.clear();
+    }
+    // =========================================================================
+}
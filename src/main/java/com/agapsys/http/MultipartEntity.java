@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * Streaming 'multipart/form-data' entity.
+ * Part headers are built up front, so content length is known unless a part has unknown length (in this case the
+ * entity is sent chunked). Part content is never buffered (see {@link BodySource}).
+ */
+final class MultipartEntity extends AbstractHttpEntity implements ChannelEntity {
+    // CLASS SCOPE =============================================================
+    private static final Charset UTF_8 = Charset.forName("utf-8");
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    /** Maximum content length returned by {@link #getContent()}. */
+    private static final int MAX_BUFFERED_LENGTH = 25 * 1024;
+
+    private static final char[] BOUNDARY_CHARS = "-_1234567890abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    private static String generateBoundary() {
+        Random random = ThreadLocalRandom.current();
+        char[] boundary = new char[30 + random.nextInt(11)];
+
+        for (int i = 0; i < boundary.length; i++) {
+            boundary[i] = BOUNDARY_CHARS[random.nextInt(BOUNDARY_CHARS.length)];
+        }
+
+        return new String(boundary);
+    }
+
+    /** Escapes a quoted parameter of 'Content-Disposition' header. */
+    private static String escape(String value) {
+        return value.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+    }
+
+    /** Body part. */
+    static final class Part {
+        private final String     name;
+        private final String     filename;
+        private final String     contentType;
+        private final BodySource content;
+
+        /**
+         * Constructor.
+         * @param name field name
+         * @param filename file name or null
+         * @param contentType content type or null
+         * @param content part content
+         */
+        Part(String name, String filename, String contentType, BodySource content) {
+            if (name == null || name.isEmpty())
+                throw new IllegalArgumentException("Null/Empty name");
+
+            if (content == null)
+                throw new IllegalArgumentException("Null content");
+
+            this.name = name;
+            this.filename = filename;
+            this.contentType = contentType;
+            this.content = content;
+        }
+
+        private Part refresh() {
+            BodySource refreshed = content.refresh();
+            return refreshed == content ? this : new Part(name, filename, contentType, refreshed);
+        }
+
+        private byte[] getHeader(String boundary) {
+            StringBuilder sb = new StringBuilder(128);
+            sb.append("--").append(boundary).append("\r\n");
+            sb.append("Content-Disposition: form-data; name=\"").append(escape(name)).append('"');
+
+            if (filename != null)
+                sb.append("; filename=\"").append(escape(filename)).append('"');
+
+            sb.append("\r\n");
+
+            if (contentType != null)
+                sb.append("Content-Type: ").append(contentType).append("\r\n");
+
+            sb.append("\r\n");
+            return sb.toString().getBytes(UTF_8);
+        }
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final Part[]   parts;
+    private final byte[][] headers;
+    private final byte[]   trailer;
+    private final long     length;
+    private final boolean  repeatable;
+
+    /**
+     * Constructor.
+     * @param parts body parts. File parts are refreshed, so content length reflects current file lengths.
+     */
+    MultipartEntity(List<Part> parts) {
+        String boundary = generateBoundary();
+
+        this.parts = new Part[parts.size()];
+        this.headers = new byte[this.parts.length][];
+
+        long length = 0;
+        boolean repeatable = true;
+
+        for (int i = 0; i < this.parts.length; i++) {
+            Part part = parts.get(i).refresh();
+
+            this.parts[i] = part;
+            this.headers[i] = part.getHeader(boundary);
+
+            long partLength = part.content.getLength();
+            if (length >= 0)
+                length = partLength < 0 ? -1 : length + headers[i].length + partLength + CRLF.length;
+
+            repeatable &= part.content.isRepeatable();
+        }
+
+        this.trailer = ("--" + boundary + "--\r\n").getBytes(UTF_8);
+        this.length = length < 0 ? -1 : length + trailer.length;
+        this.repeatable = repeatable;
+
+        setContentType("multipart/form-data; boundary=" + boundary);
+        setChunked(this.length < 0);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return repeatable;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return !repeatable;
+    }
+
+    /**
+     * Returns the content of this entity.
+     * Only small repeatable entities are supported: larger ones must be written (see {@link #writeTo(OutputStream)}).
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        if (!repeatable || length < 0 || length > MAX_BUFFERED_LENGTH)
+            throw new UnsupportedOperationException("Content of a large or streaming multipart entity can only be written");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) length);
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (out == null)
+            throw new IllegalArgumentException("Null output stream");
+
+        for (int i = 0; i < parts.length; i++) {
+            out.write(headers[i]);
+            parts[i].content.writeTo(out);
+            out.write(CRLF);
+        }
+
+        out.write(trailer);
+    }
+
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        if (channel == null)
+            throw new IllegalArgumentException("Null channel");
+
+        long total = 0;
+
+        for (int i = 0; i < parts.length; i++) {
+            BodySource.writeFully(channel, ByteBuffer.wrap(headers[i]));
+            long written = parts[i].content.writeTo(channel);
+            BodySource.writeFully(channel, ByteBuffer.wrap(CRLF));
+
+            total += headers[i].length + written + CRLF.length;
+        }
+
+        BodySource.writeFully(channel, ByteBuffer.wrap(trailer));
+        return total + trailer.length;
+    }
+    // =========================================================================
+}
@@ -17,10 +17,15 @@
 package com.agapsys.http;
 
 import java.io.File;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.http.Consts;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
 
 public abstract class MultipartRequest extends EntityRequest {
     // CLASS SCOPE =============================================================
@@ -30,6 +35,10 @@ public abstract class MultipartRequest extends EntityRequest {
             super(uri, uriParams);
         }
 
+        public MultipartPost(UriTemplate uriTemplate, Object...uriParams) {
+            super(uriTemplate, uriParams);
+        }
+
         public MultipartPost() {
             super();
         }
@@ -46,6 +55,10 @@ public abstract class MultipartRequest extends EntityRequest {
             super(uri, uriParams);
         }
 
+        public MultipartPut(UriTemplate uriTemplate, Object...uriParams) {
+            super(uriTemplate, uriParams);
+        }
+
         public MultipartPut() {
             super();
         }
@@ -62,6 +75,10 @@ public abstract class MultipartRequest extends EntityRequest {
             super(uri, uriParams);
         }
 
+        public MultipartPatch(UriTemplate uriTemplate, Object...uriParams) {
+            super(uriTemplate, uriParams);
+        }
+
         public MultipartPatch() {
             super();
         }
@@ -74,41 +91,85 @@ public abstract class MultipartRequest extends EntityRequest {
     // =========================================================================
     
     // INSTANCE SCOPE ==========================================================
-    private final MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+    private final List<MultipartEntity.Part> parts = new CopyOnWriteArrayList<>();
 
     public MultipartRequest(String uri, Object...uriParams) {
         super(uri, uriParams);
     }
+
+    public MultipartRequest(UriTemplate uriTemplate, Object...uriParams) {
+        super(uriTemplate, uriParams);
+    }
     
     public MultipartRequest() {}
 
     public void addFile(String name, File file, String mimeType) {
-        builder.addBinaryBody(name, file, ContentType.create(mimeType), name);
+        parts.add(new MultipartEntity.Part(name, name, ContentType.create(mimeType).toString(), new BodySource.FileSource(file)));
     }
     
     public void addFile(String name, File file) {
-        builder.addBinaryBody(name, file);
+        parts.add(new MultipartEntity.Part(name, file.getName(), ContentType.DEFAULT_BINARY.toString(), new BodySource.FileSource(file)));
     }
     
     public void addFile(File file) {
-        builder.addBinaryBody(file.getName(), file);
+        addFile(file.getName(), file);
     }
     
     public void addFile(File file, String mimeType) {
         addFile(file.getName(), file, mimeType);
     }
+
+    /**
+     * Adds a part whose content is read from given stream.
+     * Given stream is not closed and can be read only once, so this request cannot be executed again (or retried).
+     * @param name field name
+     * @param in content stream
+     * @param length content length or -1 if it is unknown (in this case request body is sent chunked).
+     * @param filename file name sent with the part or null
+     * @param mimeType content type of the part
+     */
+    public void addStream(String name, InputStream in, long length, String filename, String mimeType) {
+        parts.add(new MultipartEntity.Part(name, filename, ContentType.create(mimeType).toString(), new BodySource.StreamSource(in, length)));
+    }
+
+    /**
+     * Adds a part whose content is read from given channel.
+     * Given channel is not closed and can be read only once, so this request cannot be executed again (or retried).
+     * Content of a {@linkplain java.nio.channels.FileChannel file channel} with known length is transferred from its current position without intermediate copies when possible.
+     * @param name field name
+     * @param channel content channel
+     * @param length content length or -1 if it is unknown (in this case request body is sent chunked).
+     * @param filename file name sent with the part or null
+     * @param mimeType content type of the part
+     */
+    public void addChannel(String name, ReadableByteChannel channel, long length, String filename, String mimeType) {
+        parts.add(new MultipartEntity.Part(name, filename, ContentType.create(mimeType).toString(), new BodySource.ChannelSource(channel, length)));
+    }
     
     public void addString(String name, String value) {
-        builder.addTextBody(name, value);
+        addString(name, value, ContentType.DEFAULT_TEXT);
     }
     
     public void addString(String name, String value, String mimeType, String charset) {
-        builder.addTextBody(name, value, ContentType.create(mimeType, charset));
+        addString(name, value, ContentType.create(mimeType, charset));
+    }
+
+    private void addString(String name, String value, ContentType contentType) {
+        if (value == null)
+            throw new IllegalArgumentException("Null value");
+
+        Charset charset = contentType.getCharset();
+        parts.add(new MultipartEntity.Part(name, null, contentType.toString(), new BodySource.BytesSource(value.getBytes(charset != null ? charset : Consts.ASCII))));
     }
     
+    /**
+     * Returns the entity associated with this request.
+     * Body is streamed: file parts are read while the request is sent.
+     * @return the entity associated with this request.
+     */
     @Override
     protected HttpEntity getEntity() {
-        return builder.build();
+        return new MultipartEntity(parts);
     }
     // =========================================================================
 }
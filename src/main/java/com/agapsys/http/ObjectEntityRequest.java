@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * Request whose body is an object encoded by a {@link BodyCodec}.
+ * Object is encoded straight into the stream sent over the network on each execution, without intermediate
+ * strings or byte arrays. Since the length of encoded content is not known in advance, body is sent chunked.
+ */
+public abstract class ObjectEntityRequest extends EntityRequest {
+    // CLASS SCOPE =============================================================
+    public static class ObjectEntityPost extends ObjectEntityRequest {
+
+        public ObjectEntityPost(BodyCodec codec, String uri, Object...uriParams) {
+            super(codec, uri, uriParams);
+        }
+
+        public ObjectEntityPost(BodyCodec codec, UriTemplate uriTemplate, Object...uriParams) {
+            super(codec, uriTemplate, uriParams);
+        }
+
+        public ObjectEntityPost(BodyCodec codec) {
+            super(codec);
+        }
+
+        @Override
+        protected HttpRequestBase getCoreRequest(String uri) {
+            return new org.apache.http.client.methods.HttpPost(uri);
+        }
+    }
+    
+    public static class ObjectEntityPut extends ObjectEntityRequest {
+
+        public ObjectEntityPut(BodyCodec codec, String uri, Object...uriParams) {
+            super(codec, uri, uriParams);
+        }
+
+        public ObjectEntityPut(BodyCodec codec, UriTemplate uriTemplate, Object...uriParams) {
+            super(codec, uriTemplate, uriParams);
+        }
+
+        public ObjectEntityPut(BodyCodec codec) {
+            super(codec);
+        }
+
+        @Override
+        protected HttpRequestBase getCoreRequest(String uri) {
+            return new org.apache.http.client.methods.HttpPut(uri);
+        }
+    }
+    
+    public static class ObjectEntityPatch extends ObjectEntityRequest {
+
+        public ObjectEntityPatch(BodyCodec codec, String uri, Object...uriParams) {
+            super(codec, uri, uriParams);
+        }
+
+        public ObjectEntityPatch(BodyCodec codec, UriTemplate uriTemplate, Object...uriParams) {
+            super(codec, uriTemplate, uriParams);
+        }
+
+        public ObjectEntityPatch(BodyCodec codec) {
+            super(codec);
+        }
+
+        @Override
+        protected HttpRequestBase getCoreRequest(String uri) {
+            return new org.apache.http.client.methods.HttpPatch(uri);
+        }
+    }
+    // =========================================================================
+    
+    // INSTANCE SCOPE ==========================================================
+    private final BodyCodec codec;
+    
+    private volatile Object contentBody = null;
+
+    public ObjectEntityRequest(BodyCodec codec, String uri, Object...uriParams) {
+        super(uri, uriParams);
+        this.codec = checkCodec(codec);
+    }
+
+    public ObjectEntityRequest(BodyCodec codec, UriTemplate uriTemplate, Object...uriParams) {
+        super(uriTemplate, uriParams);
+        this.codec = checkCodec(codec);
+    }
+    
+    public ObjectEntityRequest(BodyCodec codec) {
+        this.codec = checkCodec(codec);
+    }
+
+    private static BodyCodec checkCodec(BodyCodec codec) {
+        if (codec == null)
+            throw new IllegalArgumentException("Null codec");
+
+        return codec;
+    }
+
+    /**
+     * Returns the codec used to encode the body of this request.
+     * @return the codec used to encode the body of this request.
+     */
+    public final BodyCodec getCodec() {
+        return codec;
+    }
+        
+    /**
+     * Returns the object sent as the body of this request.
+     * @return the object sent as the body of this request (may be null).
+     */
+    public final Object getContentBody() {
+        return contentBody;
+    }
+    
+    /**
+     * Sets the object sent as the body of this request.
+     * Object is encoded on each execution, so later changes to its state are reflected in subsequent executions.
+     * @param contentBody object to be sent. Null values are passed to the codec as well.
+     */
+    public final void setContentBody(Object contentBody) {
+        this.contentBody = contentBody;
+    }
+
+    @Override
+    protected HttpEntity getEntity() {
+        return new CodecEntity(codec, contentBody);
+    }
+    // =========================================================================
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * Immutable snapshot of a request (see {@link HttpRequest#prepare()}).
+ * Headers are merged and the body is encoded once, when the request is prepared. Each execution only creates the
+ * instance sent over the network, which shares the encoded body, so a prepared request can be executed any number of
+ * times, concurrently, without encoding costs.
+ * Methods which modify a request throw {@link UnsupportedOperationException}.
+ */
+public final class PreparedRequest extends HttpRequest {
+    // CLASS SCOPE =============================================================
+    /** Wire request without body. */
+    private static final class BodilessRequest extends HttpRequestBase {
+        private final String method;
+
+        private BodilessRequest(String method, String uri) {
+            this.method = method;
+            setURI(java.net.URI.create(uri));
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+    }
+
+    /** Wire request with body. */
+    private static final class EnclosingRequest extends HttpEntityEnclosingRequestBase {
+        private final String method;
+
+        private EnclosingRequest(String method, String uri) {
+            this.method = method;
+            setURI(java.net.URI.create(uri));
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final String       method;
+    private final boolean      enclosing;
+    private final BufferEntity body;
+    private final Compression  compression;
+    private final String       targetKey;
+
+    /**
+     * Constructor.
+     * @param request request to be prepared
+     * @throws IOException if request body could not be encoded.
+     * @throws IllegalStateException if request body cannot be sent more than once.
+     */
+    PreparedRequest(HttpRequest request) throws IOException {
+        super.setUri(request.getUri());
+        super.setResponseDecompression(request.getResponseDecompression());
+
+        // Same instance an execution would send, without client headers
+        HttpRequestBase wireRequest = request.createWireRequest(Collections.<HttpHeader>emptyList());
+
+        for (Header header : wireRequest.getAllHeaders()) {
+            super.addHeader(header.getName(), header.getValue());
+        }
+
+        this.method = wireRequest.getMethod();
+        this.enclosing = wireRequest instanceof HttpEntityEnclosingRequestBase;
+        this.body = enclosing ? encode(((HttpEntityEnclosingRequestBase) wireRequest).getEntity()) : null;
+        this.compression = request.getBodyCompression();
+        this.targetKey = super.getTargetKey();
+    }
+
+    private static BufferEntity encode(HttpEntity entity) throws IOException {
+        if (entity == null)
+            return null;
+
+        if (!entity.isRepeatable())
+            throw new IllegalStateException("Request body can be sent only once and cannot be prepared");
+
+        long length = entity.getContentLength();
+        if (length > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Request body is too large to be prepared: " + length);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length < 0 ? 1024 : (int) length);
+
+        entity.writeTo(out);
+
+        BufferEntity encoded = new BufferEntity(ByteBuffer.wrap(out.toByteArray()));
+        encoded.setContentType(entity.getContentType());
+        encoded.setContentEncoding(entity.getContentEncoding());
+        return encoded;
+    }
+
+    /**
+     * Returns the compression applied to the body of this request.
+     * @return the compression applied to the body of this request or null if client setting is used.
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    @Override
+    Compression getBodyCompression() {
+        return compression;
+    }
+
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    String getTargetKey() {
+        return targetKey;
+    }
+
+    /**
+     * Returns this instance, which is already prepared.
+     * @return this instance.
+     */
+    @Override
+    public PreparedRequest prepare() {
+        return this;
+    }
+
+    @Override
+    protected HttpRequestBase getCoreRequest(String uri) {
+        return enclosing ? new EnclosingRequest(method, uri) : new BodilessRequest(method, uri);
+    }
+
+    @Override
+    protected void beforeSend(HttpRequestBase wireRequest) {
+        if (body != null)
+            ((HttpEntityEnclosingRequestBase) wireRequest).setEntity(body);
+    }
+
+    @Override
+    public void setUri(String uri) {
+        throw new UnsupportedOperationException("Prepared requests are immutable");
+    }
+
+    @Override
+    public void setResponseDecompression(Boolean responseDecompression) {
+        throw new UnsupportedOperationException("Prepared requests are immutable");
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        throw new UnsupportedOperationException("Prepared requests are immutable");
+    }
+
+    @Override
+    public void clearHeaders() {
+        throw new UnsupportedOperationException("Prepared requests are immutable");
+    }
+    // =========================================================================
+}
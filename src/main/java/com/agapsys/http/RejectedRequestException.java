@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is rejected by the admission control of a {@link HttpClient} (see {@link AdmissionPolicy})
+ * without being sent, either because the circuit of its host is open or because its host is at its concurrency limit.
+ * Rejections are never retried by a {@link RetryPolicy} with default settings.
+ */
+public class RejectedRequestException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String  host;
+    private final boolean circuitOpen;
+
+    /**
+     * Constructor.
+     * @param host target host (scheme, host and port)
+     * @param circuitOpen true if the request was rejected because the circuit of the host is open.
+     * @param message error message
+     */
+    public RejectedRequestException(String host, boolean circuitOpen, String message) {
+        super(message);
+        this.host = host;
+        this.circuitOpen = circuitOpen;
+    }
+
+    /**
+     * Returns the target host of rejected request.
+     * @return the target host (scheme, host and port) of rejected request.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Returns a boolean indicating if the request was rejected because the circuit of its host is open.
+     * @return true if the circuit is open or false if the host was at its concurrency limit.
+     */
+    public boolean isCircuitOpen() {
+        return circuitOpen;
+    }
+}
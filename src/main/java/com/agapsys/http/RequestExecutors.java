@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors used to run blocking requests.
+ * This implementation uses platform threads. On Java 21+ a multi-release
+ * variant of this class (src/main/java21) uses virtual threads instead.
+ */
+final class RequestExecutors {
+
+    private RequestExecutors() {}
+
+    /**
+     * Creates an executor which runs each submitted task in its own thread.
+     * @return an executor which runs each submitted task in its own thread.
+     */
+    static ExecutorService newPerRequestExecutor() {
+        final AtomicInteger counter = new AtomicInteger();
+
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "http-client-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns a boolean indicating if executors created by this class use virtual threads.
+     * @return a boolean indicating if executors created by this class use virtual threads.
+     */
+    static boolean usesVirtualThreads() {
+        return false;
+    }
+}
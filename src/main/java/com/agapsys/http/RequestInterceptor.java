@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.IOException;
+
+/**
+ * Intercepts requests sent over the network by a {@link HttpClient} (see {@link HttpClient#addInterceptor(RequestInterceptor)}).
+ * Interceptors are called in registration order; each one proceeds with the execution through given chain and may
+ * add headers before proceeding, inspect or replace the response, or short-circuit the execution.
+ * Interceptors wrap the blocking execution path (including retries and hedging). Responses served by a
+ * {@link ResponseCache} without contacting the server are not intercepted.
+ * Implementations must be thread-safe.
+ */
+public interface RequestInterceptor {
+
+    /** Execution being intercepted. */
+    interface Chain {
+
+        /**
+         * Returns the client executing the request.
+         * @return the client executing the request.
+         */
+        HttpClient getClient();
+
+        /**
+         * Returns the request being executed.
+         * Interceptors should not modify it: use {@link #addHeader(String, String)} instead.
+         * @return the request being executed.
+         */
+        HttpRequest getRequest();
+
+        /**
+         * Adds a header to be sent (after request headers) when execution proceeds.
+         * Given header applies only to this execution.
+         * @param name header name
+         * @param value header value
+         */
+        void addHeader(String name, String value);
+
+        /**
+         * Proceeds with the execution, calling the next interceptor or sending the request.
+         * @return server response
+         * @throws IOException if there was an I/O error while executing the request.
+         */
+        HttpResponse proceed() throws IOException;
+    }
+
+    /**
+     * Intercepts an execution.
+     * @param chain execution being intercepted
+     * @return server response. It is usually the one returned by {@link Chain#proceed()}.
+     * @throws IOException if there was an I/O error while executing the request.
+     */
+    HttpResponse intercept(Chain chain) throws IOException;
+}
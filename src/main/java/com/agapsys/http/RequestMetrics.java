@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.util.Collections;
+import java.util.Map;
+
+/** Snapshot of phase latencies recorded for requests sharing the same target host and method. */
+public final class RequestMetrics {
+    private final String host;
+    private final String method;
+    private final Map<RequestPhase, HistogramSnapshot> histograms;
+
+    RequestMetrics(String host, String method, Map<RequestPhase, HistogramSnapshot> histograms) {
+        this.host       = host;
+        this.method     = method;
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * Returns the target host of requests.
+     * @return the target host of requests (e.g. "http://example.com:80").
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Returns the method of requests.
+     * @return the method of requests.
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the latencies recorded for given phase.
+     * @param phase request phase
+     * @return the latencies recorded for given phase.
+     */
+    public HistogramSnapshot getHistogram(RequestPhase phase) {
+        if (phase == null)
+            throw new IllegalArgumentException("Null phase");
+
+        return histograms.get(phase);
+    }
+
+    /**
+     * Returns the latencies recorded for each phase.
+     * @return an immutable map of latencies recorded for each phase.
+     */
+    public Map<RequestPhase, HistogramSnapshot> getHistograms() {
+        return histograms;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s %s", method, host, histograms);
+    }
+}
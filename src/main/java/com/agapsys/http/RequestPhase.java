@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+/**
+ * Phases of a request execution recorded by {@link HttpClient} when metrics are enabled
+ * (see {@link HttpClient#setMetricsEnabled(boolean)}).
+ */
+public enum RequestPhase {
+    /**
+     * Time spent waiting for a connection to be leased from the pool. Time spent opening a new connection
+     * ({@link #CONNECT} and {@link #TLS_HANDSHAKE}) is not included.
+     */
+    POOL_WAIT,
+
+    /** Time spent opening a TCP connection. Recorded only when a new connection is opened. */
+    CONNECT,
+
+    /** Time spent in TLS handshake. Recorded only when a new TLS connection is opened. */
+    TLS_HANDSHAKE,
+
+    /** Time elapsed from the moment the request starts being sent until response head is received. */
+    TIME_TO_FIRST_BYTE,
+
+    /** Time elapsed from the moment response head is received until response content is fully read or closed. */
+    BODY_READ;
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Measures the phases of a single request execution.
+ * A timer is stored in the execution context, where it is found by the hooks of wrapped client
+ * ({@link ClientRequestExecutor} and {@link TimingSocketFactory}). When several exchanges are needed (e.g. redirects), phase
+ * latencies are summed.
+ */
+final class RequestTimer {
+    // CLASS SCOPE =============================================================
+    /** Name of the context attribute holding the timer of an execution. */
+    static final String ATTRIBUTE = "com.agapsys.http.request-timer";
+
+    /**
+     * Returns the timer of given execution context.
+     * @param context execution context
+     * @return the timer of given execution context or null if the execution is not timed.
+     */
+    static RequestTimer get(HttpContext context) {
+        Object timer = context == null ? null : context.getAttribute(ATTRIBUTE);
+        return timer instanceof RequestTimer ? (RequestTimer) timer : null;
+    }
+
+    /** Entity which records {@link RequestPhase#BODY_READ} when its content is fully read or closed. */
+    private static final class TimedEntity extends HttpEntityWrapper {
+        private final RequestTimer timer;
+
+        private TimedEntity(HttpEntity wrappedEntity, RequestTimer timer) {
+            super(wrappedEntity);
+            this.timer = timer;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(super.getContent()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+
+                    if (b < 0)
+                        timer.bodyRead();
+
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+
+                    if (n < 0)
+                        timer.bodyRead();
+
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        timer.bodyRead();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            super.writeTo(out);
+            timer.bodyRead();
+        }
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final long[] nanos = new long[RequestPhase.values().length];
+
+    private long    mark;
+    private long    opening   = 0; // Time spent opening connections since mark
+    private boolean connected = false;
+    private boolean secured   = false;
+    private boolean received  = false;
+
+    private LatencyHistogram[] histograms = null;
+    private boolean            finished   = false;
+
+    /**
+     * Constructor.
+     * @param start {@linkplain System#nanoTime() time} when the execution started.
+     */
+    RequestTimer(long start) {
+        this.mark = start;
+    }
+
+    void connected(long elapsedNanos) {
+        nanos[RequestPhase.CONNECT.ordinal()] += elapsedNanos;
+        opening += elapsedNanos;
+        connected = true;
+    }
+
+    void secured(long elapsedNanos) {
+        nanos[RequestPhase.TLS_HANDSHAKE.ordinal()] += elapsedNanos;
+        opening += elapsedNanos;
+        secured = true;
+    }
+
+    void exchangeStarted(long now) {
+        nanos[RequestPhase.POOL_WAIT.ordinal()] += Math.max(0, now - mark - opening);
+        opening = 0;
+        mark = now;
+    }
+
+    void responseReceived(long now) {
+        nanos[RequestPhase.TIME_TO_FIRST_BYTE.ordinal()] += now - mark;
+        mark = now;
+        received = true;
+    }
+
+    private void record(RequestPhase phase) {
+        histograms[phase.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(nanos[phase.ordinal()]));
+    }
+
+    /**
+     * Records the phases which precede response content into given histograms.
+     * @param histograms histograms indexed by {@linkplain RequestPhase#ordinal() phase ordinal}.
+     * @param response received response. If it has content, {@link RequestPhase#BODY_READ} is recorded once content is consumed.
+     */
+    void record(LatencyHistogram[] histograms, org.apache.http.HttpResponse response) {
+        if (!received)
+            return;
+
+        this.histograms = histograms;
+
+        record(RequestPhase.POOL_WAIT);
+        record(RequestPhase.TIME_TO_FIRST_BYTE);
+
+        if (connected)
+            record(RequestPhase.CONNECT);
+
+        if (secured)
+            record(RequestPhase.TLS_HANDSHAKE);
+
+        HttpEntity entity = response.getEntity();
+
+        if (entity == null) {
+            bodyRead();
+        } else {
+            response.setEntity(new TimedEntity(entity, this));
+        }
+    }
+
+    private void bodyRead() {
+        if (finished)
+            return;
+
+        finished = true;
+        nanos[RequestPhase.BODY_READ.ordinal()] = System.nanoTime() - mark;
+        record(RequestPhase.BODY_READ);
+    }
+    // =========================================================================
+}
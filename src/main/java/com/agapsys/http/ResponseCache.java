@@ -0,0 +1,377 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http;
+
+import com.agapsys.http.utils.IOUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * HTTP response cache (RFC 7234) bounded by the number of bytes it holds.
+ * Instances created through the public constructor keep responses in memory, evicting least recently used entries first
+ * (see {@link DiskResponseCache} for a persistent cache). Stale entries carrying validators
+ * ('ETag' / 'Last-Modified') are revalidated with a conditional request.
+ * Only GET requests executed synchronously are served from the cache.
+ * Instances are thread-safe and can be shared among clients.
+ */
+public class ResponseCache {
+    // CLASS SCOPE =============================================================
+    private static final Header[] EMPTY_HEADERS = new Header[0];
+
+    /** Entity which replays an already read prefix before the remaining content of a wrapped entity. */
+    private static class PrefixedEntity extends HttpEntityWrapper {
+        private final byte[] prefix;
+        private final int    prefixLength;
+
+        PrefixedEntity(HttpEntity wrapped, byte[] prefix, int prefixLength) {
+            super(wrapped);
+            this.prefix = prefix;
+            this.prefixLength = prefixLength;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new SequenceInputStream(new ByteArrayInputStream(prefix, 0, prefixLength), super.getContent());
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try (InputStream in = getContent()) {
+                IOUtils.copy(in, out);
+            }
+        }
+    }
+
+    private static boolean isCacheableStatus(int status) {
+        switch (status) {
+            case 200:
+            case 203:
+            case 300:
+            case 301:
+            case 404:
+            case 410:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    private static Header[] getRequestCacheHeaders(HttpRequest request, List<HttpHeader> defaultHeaders) {
+        String cacheControl = CachedResponse.getRequestHeader(request, defaultHeaders, "Cache-Control");
+        String pragma = CachedResponse.getRequestHeader(request, defaultHeaders, "Pragma");
+
+        if (cacheControl == null && pragma == null)
+            return EMPTY_HEADERS;
+
+        return new Header[] {
+            new BasicHeader("Cache-Control", cacheControl == null ? "" : cacheControl),
+            new BasicHeader("Pragma", pragma == null ? "" : pragma)
+        };
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final CacheStore store;
+    private volatile long maxEntrySize;
+
+    private final AtomicLong hitCount          = new AtomicLong();
+    private final AtomicLong missCount         = new AtomicLong();
+    private final AtomicLong revalidationCount = new AtomicLong();
+
+    /**
+     * Constructor.
+     * Creates an in-memory cache.
+     * @param maxSize maximum number of bytes held by the cache. Entries are limited to 1/8 of this value by default.
+     */
+    public ResponseCache(long maxSize) {
+        this(new MemoryCacheStore(maxSize));
+    }
+
+    /**
+     * Constructor.
+     * @param store storage backing the cache.
+     */
+    ResponseCache(CacheStore store) {
+        this.store = store;
+        this.maxEntrySize = Math.max(1, Math.min(Integer.MAX_VALUE - 8, store.getMaxSize() / 8));
+    }
+
+    /**
+     * Returns the maximum number of bytes held by this cache.
+     * @return the maximum number of bytes held by this cache.
+     */
+    public long getMaxSize() {
+        return store.getMaxSize();
+    }
+
+    /**
+     * Returns the maximum size of a single response body stored by this cache.
+     * @return the maximum size of a cached response body.
+     */
+    public long getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    /**
+     * Sets the maximum size of a single response body stored by this cache.
+     * Larger responses are passed through without being stored.
+     * @param maxEntrySize maximum size of a cached response body.
+     */
+    public void setMaxEntrySize(long maxEntrySize) {
+        if (maxEntrySize < 1 || maxEntrySize > getMaxSize() || maxEntrySize > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Invalid max entry size: " + maxEntrySize);
+
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * Returns approximately how many bytes are currently held by this cache.
+     * @return approximated size in bytes.
+     */
+    public long getSize() {
+        return store.getSize();
+    }
+
+    /**
+     * Returns the number of cached responses.
+     * @return the number of cached responses.
+     */
+    public int getEntryCount() {
+        return store.getEntryCount();
+    }
+
+    /**
+     * Returns the number of requests served from the cache without contacting the server (revalidated entries included).
+     * @return the number of cache hits.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of cacheable requests which were sent to the server without a conditional header.
+     * @return the number of cache misses.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of conditional requests sent to revalidate stale entries.
+     * @return the number of revalidations.
+     */
+    public long getRevalidationCount() {
+        return revalidationCount.get();
+    }
+
+    /** Removes all cached responses. */
+    public void clear() {
+        store.clear();
+    }
+
+    /**
+     * Executes given request through given client, serving it from this cache when possible.
+     * @param client client used to send the request over the network
+     * @param request request
+     * @return response.
+     * @throws IOException if there was an I/O error while processing the request.
+     */
+    HttpResponse execute(HttpClient client, HttpRequest request) throws IOException {
+        String method = request.getMethod();
+        String key = request.getUri();
+
+        if (!method.equals("GET")) {
+            HttpResponse response = client.exchange(request, Collections.<HttpHeader>emptyList());
+
+            // Unsafe methods invalidate stored responses (RFC 7234, section 4.4)
+            int status = response.getStatusCode();
+            if (!method.equals("HEAD") && !method.equals("OPTIONS") && !method.equals("TRACE") && status >= 200 && status < 400)
+                store.remove(key);
+
+            return response;
+        }
+
+        List<HttpHeader> defaultHeaders = client.getDefaultHeaders();
+        Header[] requestCacheHeaders = getRequestCacheHeaders(request, defaultHeaders);
+        boolean noStore = CachedResponse.getDirective(requestCacheHeaders, "Cache-Control", "no-store") != null;
+        boolean noCache = CachedResponse.getDirective(requestCacheHeaders, "Cache-Control", "no-cache") != null
+            || CachedResponse.getDirective(requestCacheHeaders, "Pragma", "no-cache") != null
+            || CachedResponse.getRequestHeader(request, defaultHeaders, "If-None-Match") != null
+            || CachedResponse.getRequestHeader(request, defaultHeaders, "If-Modified-Since") != null;
+
+        if (noStore)
+            return client.exchange(request, Collections.<HttpHeader>emptyList());
+
+        CachedResponse cached = noCache ? null : store.get(key, request, defaultHeaders);
+
+        long now = System.currentTimeMillis();
+        List<HttpHeader> conditionalHeaders = Collections.emptyList();
+
+        if (cached != null) {
+            if (cached.isFresh(now)) {
+                hitCount.incrementAndGet();
+                return toResponse(client, request, cached, now);
+            }
+
+            conditionalHeaders = cached.getConditionalHeaders();
+            if (conditionalHeaders.isEmpty())
+                cached = null;
+        }
+
+        if (cached != null) {
+            revalidationCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+
+        long requestTime = now;
+        HttpResponse response = client.exchange(request, conditionalHeaders);
+        long responseTime = System.currentTimeMillis();
+        CloseableHttpResponse wrapped = response.getWrappedResponse();
+
+        if (cached != null && wrapped.getStatusLine().getStatusCode() == 304) {
+            Header[] notModifiedHeaders = wrapped.getAllHeaders();
+            response.close();
+
+            CachedResponse revalidated = cached.revalidated(notModifiedHeaders, requestTime, responseTime);
+            store.put(key, revalidated);
+            hitCount.incrementAndGet();
+            return toResponse(client, request, revalidated, responseTime);
+        }
+
+        return storeResponse(client, key, request, defaultHeaders, response, requestTime, responseTime);
+    }
+
+    /**
+     * Stores given response if it is cacheable.
+     * @return the response to be returned to the caller.
+     */
+    private HttpResponse storeResponse(HttpClient client, String key, HttpRequest request, List<HttpHeader> defaultHeaders, HttpResponse response, long requestTime, long responseTime) throws IOException {
+        CloseableHttpResponse wrapped = response.getWrappedResponse();
+        Header[] headers = wrapped.getAllHeaders();
+
+        if (!isCacheableStatus(wrapped.getStatusLine().getStatusCode())
+            || CachedResponse.getDirective(headers, "Cache-Control", "no-store") != null) {
+            return response;
+        }
+
+        boolean explicitFreshness = CachedResponse.getSecondsDirective(headers, "max-age") >= 0
+            || CachedResponse.getFirstHeader(headers, "Expires") != null;
+        boolean validators = CachedResponse.getFirstHeader(headers, "ETag") != null
+            || CachedResponse.getFirstHeader(headers, "Last-Modified") != null;
+
+        if (!explicitFreshness && !validators)
+            return response;
+
+        List<String> varyNames = CachedResponse.getVaryNames(headers);
+        if (varyNames == null)
+            return response;
+
+        HttpEntity entity = wrapped.getEntity();
+        long declaredLength = entity == null ? 0 : entity.getContentLength();
+        long limit = maxEntrySize;
+
+        if (declaredLength > limit)
+            return response;
+
+        byte[] body;
+        if (entity == null) {
+            body = new byte[0];
+        } else {
+            body = new byte[declaredLength >= 0 ? (int) declaredLength : (int) Math.min(limit, 8 * 1024)];
+            int length = 0;
+            InputStream in = entity.getContent();
+
+            while (true) {
+                if (length == body.length) {
+                    if (length > limit) {
+                        // Too large: give the caller what was already read followed by the rest of the stream
+                        wrapped.setEntity(new PrefixedEntity(entity, body, length));
+                        return response;
+                    }
+
+                    if (declaredLength >= 0)
+                        break;
+
+                    body = Arrays.copyOf(body, (int) Math.min(limit + 1, (long) body.length * 2 + 1));
+                }
+
+                int read = in.read(body, length, body.length - length);
+                if (read < 0)
+                    break;
+
+                length += read;
+            }
+
+            response.close();
+            if (length != body.length)
+                body = Arrays.copyOf(body, length);
+        }
+
+        Map<String, String> varyValues = new LinkedHashMap<>();
+        for (String name : varyNames) {
+            String lowerName = name.toLowerCase();
+            varyValues.put(lowerName, CachedResponse.getRequestHeader(request, defaultHeaders, lowerName));
+        }
+
+        CachedResponse cached = new CachedResponse(wrapped.getStatusLine(), headers, ByteBuffer.wrap(body), requestTime, responseTime, varyValues);
+        store.put(key, cached);
+        return toResponse(client, request, cached, responseTime);
+    }
+
+    /**
+     * Creates the response returned to the caller from given entry.
+     * Entries may hold encoded content (stored by requests with decompression disabled), so decompression setting
+     * of given request is applied to every returned response.
+     */
+    private static HttpResponse toResponse(HttpClient client, HttpRequest request, CachedResponse cached, long now) {
+        HttpResponse response = cached.toResponse(now);
+
+        if (client.isResponseDecompressionEnabled(request))
+            DecompressingEntity.decompress(response.getWrappedResponse());
+
+        return response;
+    }
+    // =========================================================================
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.net.ssl.SSLException;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * Retry policy used by a {@link HttpClient}.
+ * Failed attempts are retried after an exponential backoff with full jitter (a random delay between zero and the
+ * exponential bound), so clients failing together do not retry together.
+ * Settings are read when the policy is passed to a client; changing an instance already passed to a client has no
+ * effect on it.
+ */
+public class RetryPolicy {
+    // CLASS SCOPE =============================================================
+    public static final int    DEFAULT_MAX_ATTEMPTS       = 3;
+    public static final long   DEFAULT_INITIAL_BACKOFF    = 100;
+    public static final long   DEFAULT_MAX_BACKOFF        = 10000;
+    public static final double DEFAULT_BACKOFF_MULTIPLIER = 2.0;
+
+    private static final Set<String> IDEMPOTENT_METHODS = new LinkedHashSet<>(Arrays.asList("GET", "HEAD", "OPTIONS", "TRACE", "PUT", "DELETE"));
+
+    /**
+     * Returns a boolean indicating if given HTTP method is idempotent (RFC 7231, section 4.2.2).
+     * @param method HTTP method
+     * @return a boolean indicating if given method is idempotent.
+     */
+    public static boolean isIdempotent(String method) {
+        return method != null && IDEMPOTENT_METHODS.contains(method.toUpperCase());
+    }
+
+    private static boolean isInstance(List<Class<? extends Exception>> types, Exception ex) {
+        for (Class<? extends Exception> type : types) {
+            if (type.isInstance(ex))
+                return true;
+        }
+
+        return false;
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private int     maxAttempts        = DEFAULT_MAX_ATTEMPTS;
+    private long    initialBackoff     = DEFAULT_INITIAL_BACKOFF;
+    private long    maxBackoff         = DEFAULT_MAX_BACKOFF;
+    private double  backoffMultiplier  = DEFAULT_BACKOFF_MULTIPLIER;
+    private boolean retryNonIdempotent = false;
+
+    private Set<Integer> retryStatusCodes = new LinkedHashSet<>(Arrays.asList(429, 502, 503, 504));
+    private List<Class<? extends Exception>> retryExceptions = new ArrayList<Class<? extends Exception>>(Collections.singletonList(IOException.class));
+    private List<Class<? extends Exception>> nonRetriableExceptions = new ArrayList<Class<? extends Exception>>(Arrays.asList(UnknownHostException.class, SSLException.class, RejectedRequestException.class));
+
+    public RetryPolicy() {}
+
+    /**
+     * Copy constructor.
+     * @param other instance to be copied
+     */
+    public RetryPolicy(RetryPolicy other) {
+        if (other == null)
+            throw new IllegalArgumentException("Null policy");
+
+        this.maxAttempts            = other.maxAttempts;
+        this.initialBackoff         = other.initialBackoff;
+        this.maxBackoff             = other.maxBackoff;
+        this.backoffMultiplier      = other.backoffMultiplier;
+        this.retryNonIdempotent     = other.retryNonIdempotent;
+        this.retryStatusCodes       = new LinkedHashSet<>(other.retryStatusCodes);
+        this.retryExceptions        = new ArrayList<>(other.retryExceptions);
+        this.nonRetriableExceptions = new ArrayList<>(other.nonRetriableExceptions);
+    }
+
+    /**
+     * Returns the maximum number of attempts (including the first one).
+     * @return the maximum number of attempts.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets the maximum number of attempts (including the first one).
+     * @param maxAttempts maximum number of attempts.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("Invalid max attempts: " + maxAttempts);
+
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Returns the backoff bound (in milliseconds) before the first retry.
+     * @return the backoff bound before the first retry.
+     */
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    /**
+     * Sets the backoff bound before the first retry. Each retry multiplies the bound by {@linkplain #getBackoffMultiplier() backoff multiplier}.
+     * @param initialBackoff backoff bound in milliseconds.
+     */
+    public void setInitialBackoff(long initialBackoff) {
+        if (initialBackoff < 0)
+            throw new IllegalArgumentException("Invalid initial backoff: " + initialBackoff);
+
+        this.initialBackoff = initialBackoff;
+    }
+
+    /**
+     * Returns the maximum backoff (in milliseconds) between attempts.
+     * @return the maximum backoff between attempts.
+     */
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    /**
+     * Sets the maximum backoff between attempts. It also limits delays requested by servers through 'Retry-After' header.
+     * @param maxBackoff maximum backoff in milliseconds.
+     */
+    public void setMaxBackoff(long maxBackoff) {
+        if (maxBackoff < 0)
+            throw new IllegalArgumentException("Invalid max backoff: " + maxBackoff);
+
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Returns the factor applied to the backoff bound on each retry.
+     * @return backoff multiplier.
+     */
+    public double getBackoffMultiplier() {
+        return backoffMultiplier;
+    }
+
+    /**
+     * Sets the factor applied to the backoff bound on each retry.
+     * @param backoffMultiplier backoff multiplier.
+     */
+    public void setBackoffMultiplier(double backoffMultiplier) {
+        if (!(backoffMultiplier >= 1.0) || Double.isInfinite(backoffMultiplier))
+            throw new IllegalArgumentException("Invalid backoff multiplier: " + backoffMultiplier);
+
+        this.backoffMultiplier = backoffMultiplier;
+    }
+
+    /**
+     * Returns a boolean indicating if requests with non-idempotent methods (e.g. POST, PATCH) are retried.
+     * @return a boolean indicating if requests with non-idempotent methods are retried.
+     */
+    public boolean isRetryNonIdempotent() {
+        return retryNonIdempotent;
+    }
+
+    /**
+     * Defines if requests with non-idempotent methods (e.g. POST, PATCH) are retried. Default is false.
+     * @param retryNonIdempotent true to retry non-idempotent requests.
+     */
+    public void setRetryNonIdempotent(boolean retryNonIdempotent) {
+        this.retryNonIdempotent = retryNonIdempotent;
+    }
+
+    /**
+     * Returns the status codes of responses which are retried.
+     * @return the status codes of responses which are retried.
+     */
+    public Set<Integer> getRetryStatusCodes() {
+        return Collections.unmodifiableSet(retryStatusCodes);
+    }
+
+    /**
+     * Sets the status codes of responses which are retried. Default codes are 429, 502, 503 and 504.
+     * @param statusCodes status codes.
+     */
+    public void setRetryStatusCodes(int...statusCodes) {
+        Set<Integer> codes = new LinkedHashSet<>();
+
+        for (int statusCode : statusCodes) {
+            if (statusCode < 100 || statusCode > 599)
+                throw new IllegalArgumentException("Invalid status code: " + statusCode);
+
+            codes.add(statusCode);
+        }
+
+        this.retryStatusCodes = codes;
+    }
+
+    /**
+     * Returns the types of exceptions which are retried.
+     * @return the types of exceptions which are retried.
+     */
+    public List<Class<? extends Exception>> getRetryExceptions() {
+        return Collections.unmodifiableList(retryExceptions);
+    }
+
+    /**
+     * Sets the types of exceptions which are retried (subclasses included). Default is {@linkplain IOException}.
+     * @param types exception types. Given collection is copied.
+     */
+    public void setRetryExceptions(Collection<Class<? extends Exception>> types) {
+        this.retryExceptions = toList(types);
+    }
+
+    /**
+     * Returns the types of exceptions which are never retried.
+     * @return the types of exceptions which are never retried.
+     */
+    public List<Class<? extends Exception>> getNonRetriableExceptions() {
+        return Collections.unmodifiableList(nonRetriableExceptions);
+    }
+
+    /**
+     * Sets the types of exceptions which are never retried (subclasses included), even if they are subclasses of a
+     * {@linkplain #getRetryExceptions() retried type}. Defaults are {@linkplain UnknownHostException}, {@linkplain SSLException} and {@linkplain RejectedRequestException}.
+     * @param types exception types. Given collection is copied.
+     */
+    public void setNonRetriableExceptions(Collection<Class<? extends Exception>> types) {
+        this.nonRetriableExceptions = toList(types);
+    }
+
+    private static List<Class<? extends Exception>> toList(Collection<Class<? extends Exception>> types) {
+        if (types == null)
+            throw new IllegalArgumentException("Null exception types");
+
+        List<Class<? extends Exception>> list = new ArrayList<>(types.size());
+
+        for (Class<? extends Exception> type : types) {
+            if (type == null)
+                throw new IllegalArgumentException("Null exception type");
+
+            list.add(type);
+        }
+
+        return list;
+    }
+
+    /**
+     * Returns a boolean indicating if requests with given method may be retried.
+     * @param method HTTP method
+     * @return a boolean indicating if requests with given method may be retried.
+     */
+    boolean isRetriable(String method) {
+        return retryNonIdempotent || isIdempotent(method);
+    }
+
+    /**
+     * Returns a boolean indicating if given failure is retried.
+     * @param ex failure
+     * @return a boolean indicating if given failure is retried.
+     */
+    boolean isRetriable(Exception ex) {
+        return isInstance(retryExceptions, ex) && !isInstance(nonRetriableExceptions, ex);
+    }
+
+    /**
+     * Returns a boolean indicating if a response with given status code is retried.
+     * @param statusCode status code
+     * @return a boolean indicating if a response with given status code is retried.
+     */
+    boolean isRetriable(int statusCode) {
+        return retryStatusCodes.contains(statusCode);
+    }
+
+    /**
+     * Returns the delay before next attempt.
+     * @param attempt number of the failed attempt (starting at 1)
+     * @param retryAfter value of 'Retry-After' response header (may be null)
+     * @return delay in milliseconds.
+     */
+    long getBackoff(int attempt, String retryAfter) {
+        if (retryAfter != null) {
+            long delay = -1;
+
+            try {
+                delay = Long.parseLong(retryAfter.trim()) * 1000;
+            } catch (NumberFormatException ex) {
+                Date date = DateUtils.parseDate(retryAfter);
+                if (date != null)
+                    delay = date.getTime() - System.currentTimeMillis();
+            }
+
+            if (delay >= 0)
+                return Math.min(delay, maxBackoff);
+        }
+
+        double bound = Math.min((double) maxBackoff, initialBackoff * Math.pow(backoffMultiplier, attempt - 1));
+        return (long) (ThreadLocalRandom.current().nextDouble() * bound);
+    }
+    // =========================================================================
+}
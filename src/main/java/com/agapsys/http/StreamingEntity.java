@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * Entity whose content is produced by a {@link BodySource} while it is written.
+ * Content with unknown length is sent chunked.
+ */
+final class StreamingEntity extends AbstractHttpEntity implements ChannelEntity {
+    private final BodySource source;
+
+    StreamingEntity(BodySource source, String contentType) {
+        this.source = source;
+        setContentType(contentType);
+        setChunked(source.getLength() < 0);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return source.isRepeatable();
+    }
+
+    @Override
+    public long getContentLength() {
+        return source.getLength();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return !source.isRepeatable();
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        throw new UnsupportedOperationException("Content of a streaming entity can only be written");
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (out == null)
+            throw new IllegalArgumentException("Null output stream");
+
+        source.writeTo(out);
+    }
+
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        if (channel == null)
+            throw new IllegalArgumentException("Null channel");
+
+        return source.writeTo(channel);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Request whose body is streamed while it is sent, so large bodies are never held in memory.
+ * Body is read from an input stream or a channel, or pushed by a {@link BodyWriter}. Bodies with unknown length are
+ * sent with chunked transfer encoding.
+ * Bodies read from streams or channels can be sent only once, so such requests are neither retried nor executed again.
+ */
+public abstract class StreamingRequest extends EntityRequest {
+    // CLASS SCOPE =============================================================
+    /** Writes a request body while the request is sent. */
+    public interface BodyWriter {
+
+        /**
+         * Writes the body into given stream.
+         * This method is called on each execution (including retries), so it must produce the same content each time.
+         * @param out destination stream. It must not be closed.
+         * @throws IOException if an I/O error happened.
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    public static class StreamingPost extends StreamingRequest {
+
+        public StreamingPost(String contentType, String uri, Object...uriParams) {
+            super(contentType, uri, uriParams);
+        }
+
+        public StreamingPost(String contentType, UriTemplate uriTemplate, Object...uriParams) {
+            super(contentType, uriTemplate, uriParams);
+        }
+
+        public StreamingPost(String contentType) {
+            super(contentType);
+        }
+
+        @Override
+        protected HttpRequestBase getCoreRequest(String uri) {
+            return new org.apache.http.client.methods.HttpPost(uri);
+        }
+    }
+    
+    public static class StreamingPut extends StreamingRequest {
+
+        public StreamingPut(String contentType, String uri, Object...uriParams) {
+            super(contentType, uri, uriParams);
+        }
+
+        public StreamingPut(String contentType, UriTemplate uriTemplate, Object...uriParams) {
+            super(contentType, uriTemplate, uriParams);
+        }
+
+        public StreamingPut(String contentType) {
+            super(contentType);
+        }
+
+        @Override
+        protected HttpRequestBase getCoreRequest(String uri) {
+            return new org.apache.http.client.methods.HttpPut(uri);
+        }
+    }
+    
+    public static class StreamingPatch extends StreamingRequest {
+
+        public StreamingPatch(String contentType, String uri, Object...uriParams) {
+            super(contentType, uri, uriParams);
+        }
+
+        public StreamingPatch(String contentType, UriTemplate uriTemplate, Object...uriParams) {
+            super(contentType, uriTemplate, uriParams);
+        }
+
+        public StreamingPatch(String contentType) {
+            super(contentType);
+        }
+
+        @Override
+        protected HttpRequestBase getCoreRequest(String uri) {
+            return new org.apache.http.client.methods.HttpPatch(uri);
+        }
+    }
+
+    private static String checkContentType(String contentType) {
+        if (contentType == null || contentType.trim().isEmpty())
+            throw new IllegalArgumentException("Null/Empty content type");
+
+        return ContentType.parse(contentType).toString();
+    }
+    // =========================================================================
+    
+    // INSTANCE SCOPE ==========================================================
+    private final String contentType;
+
+    private volatile BodySource body = null;
+
+    /**
+     * Constructor.
+     * @param contentType body content type (e.g. "application/json; charset=utf-8")
+     * @param uri request URI
+     * @param uriParams parameters passed to format the string passed as URI
+     */
+    public StreamingRequest(String contentType, String uri, Object...uriParams) {
+        super(uri, uriParams);
+        this.contentType = checkContentType(contentType);
+    }
+
+    /**
+     * Constructor.
+     * @param contentType body content type (e.g. "application/json; charset=utf-8")
+     * @param uriTemplate request URI template
+     * @param uriParams values of template variables
+     */
+    public StreamingRequest(String contentType, UriTemplate uriTemplate, Object...uriParams) {
+        super(uriTemplate, uriParams);
+        this.contentType = checkContentType(contentType);
+    }
+    
+    public StreamingRequest(String contentType) {
+        this.contentType = checkContentType(contentType);
+    }
+
+    public final String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Sets the body to be read from given stream.
+     * Given stream is not closed.
+     * @param in body stream
+     * @param length body length or -1 if it is unknown (in this case body is sent chunked).
+     */
+    public void setBody(InputStream in, long length) {
+        body = new BodySource.StreamSource(in, length);
+    }
+
+    /**
+     * Sets the body to be read from given channel.
+     * Given channel is not closed. Content of a {@linkplain java.nio.channels.FileChannel file channel} with known
+     * length is transferred from its current position without intermediate copies when possible.
+     * @param channel body channel
+     * @param length body length or -1 if it is unknown (in this case body is sent chunked).
+     */
+    public void setBody(ReadableByteChannel channel, long length) {
+        body = new BodySource.ChannelSource(channel, length);
+    }
+
+    /**
+     * Sets the body to be pushed by given writer.
+     * @param writer body writer
+     * @param length body length or -1 if it is unknown (in this case body is sent chunked).
+     */
+    public void setBody(BodyWriter writer, long length) {
+        body = new BodySource.WriterSource(writer, length);
+    }
+
+    @Override
+    protected HttpEntity getEntity() {
+        BodySource source = body;
+
+        if (source == null)
+            throw new IllegalStateException("Body was not set");
+
+        return new StreamingEntity(source.refresh(), contentType);
+    }
+    // =========================================================================
+}
@@ -19,7 +19,6 @@ package com.agapsys.http;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 
 public abstract class StringEntityRequest extends EntityRequest {
     // CLASS SCOPE =============================================================
@@ -29,6 +28,10 @@ public abstract class StringEntityRequest extends EntityRequest {
             super(mimeType, charset, uri, uriParams);
         }
 
+        public StringEntityPost(String mimeType, String charset, UriTemplate uriTemplate, Object...uriParams) {
+            super(mimeType, charset, uriTemplate, uriParams);
+        }
+
         public StringEntityPost(String mimeType, String charset) {
             super(mimeType, charset);
         }
@@ -45,6 +48,10 @@ public abstract class StringEntityRequest extends EntityRequest {
             super(mimeType, charset, uri, uriParams);
         }
 
+        public StringEntityPut(String mimeType, String charset, UriTemplate uriTemplate, Object...uriParams) {
+            super(mimeType, charset, uriTemplate, uriParams);
+        }
+
         public StringEntityPut(String mimeType, String charset) {
             super(mimeType, charset);
         }
@@ -61,6 +68,10 @@ public abstract class StringEntityRequest extends EntityRequest {
             super(mimeType, charset, uri, uriParams);
         }
 
+        public StringEntityPatch(String mimeType, String charset, UriTemplate uriTemplate, Object...uriParams) {
+            super(mimeType, charset, uriTemplate, uriParams);
+        }
+
         public StringEntityPatch(String mimeType, String charset) {
             super(mimeType, charset);
         }
@@ -81,6 +92,11 @@ public abstract class StringEntityRequest extends EntityRequest {
         super(uri, uriParams);
         contentType = ContentType.create(mimeType, charset);
     }
+
+    public StringEntityRequest(String mimeType, String charset, UriTemplate uriTemplate, Object...uriParams) {
+        super(uriTemplate, uriParams);
+        contentType = ContentType.create(mimeType, charset);
+    }
     
     public StringEntityRequest(String mimeType, String charset) {
         contentType = ContentType.create(mimeType, charset);
@@ -105,7 +121,7 @@ public abstract class StringEntityRequest extends EntityRequest {
 
     @Override
     protected HttpEntity getEntity() {
-        return new StringEntity(contentBody, contentType);
+        return TextEntity.create(contentBody, contentType);
     }
     // =========================================================================
 }
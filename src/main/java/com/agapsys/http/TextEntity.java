@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+
+/**
+ * Entity whose content is a string encoded while it is written.
+ * Content is encoded in chunks into a buffer borrowed from the {@linkplain BufferPool pool} of the client which
+ * sends it, so no byte array holding the whole body is allocated on each execution. Encoded length is computed
+ * upfront, so content is not sent chunked. Output is the same produced by {@link String#getBytes(Charset)}
+ * (characters which cannot be encoded are replaced by '?').
+ */
+final class TextEntity extends AbstractHttpEntity {
+    // CLASS SCOPE =============================================================
+    private static final int UTF_8      = 0;
+    private static final int ISO_8859_1 = 1;
+    private static final int US_ASCII   = 2;
+
+    /**
+     * Creates an entity for given text.
+     * @param text entity content
+     * @param contentType content type (charset defaults to ISO-8859-1)
+     * @return a text entity if content type charset is UTF-8, ISO-8859-1 or US-ASCII; otherwise a regular string entity.
+     */
+    static HttpEntity create(String text, ContentType contentType) {
+        Charset charset = contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.ISO_8859_1;
+
+        int encoding;
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            encoding = UTF_8;
+        } else if (charset.equals(StandardCharsets.ISO_8859_1)) {
+            encoding = ISO_8859_1;
+        } else if (charset.equals(StandardCharsets.US_ASCII)) {
+            encoding = US_ASCII;
+        } else {
+            return new StringEntity(text, contentType);
+        }
+
+        return new TextEntity(text, contentType, charset, encoding);
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final String  text;
+    private final Charset charset;
+    private final int     encoding;
+    private final long    length;
+
+    private volatile BufferPool bufferPool = null;
+
+    private TextEntity(String text, ContentType contentType, Charset charset, int encoding) {
+        if (text == null)
+            throw new IllegalArgumentException("Null text");
+
+        this.text = text;
+        this.charset = charset;
+        this.encoding = encoding;
+        this.length = countBytes();
+        setContentType(contentType.toString());
+    }
+
+    /**
+     * Defines the pool providing encoding buffers.
+     * @param bufferPool buffer pool or null to allocate a buffer on each write.
+     */
+    void setBufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return new ByteArrayInputStream(text.getBytes(charset));
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (out == null)
+            throw new IllegalArgumentException("Null output stream");
+
+        BufferPool pool = bufferPool;
+        int capacity = (int) Math.min(length, BufferPool.MAX_BUFFER_SIZE);
+        ByteBuffer buffer = pool != null ? pool.acquire(capacity) : ByteBuffer.allocate(Math.max(capacity, 4));
+
+        try {
+            encode(buffer.array(), out);
+        } finally {
+            if (pool != null)
+                pool.release(buffer);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of encoded text.
+     * @return the number of bytes of encoded text.
+     */
+    private long countBytes() {
+        try {
+            return encode(null, null);
+        } catch (IOException ex) {
+            throw new AssertionError(ex); // Nothing is written while counting
+        }
+    }
+
+    /**
+     * Encodes the text.
+     * @param buffer encoding buffer (at least 4 bytes) or null to only count encoded bytes
+     * @param out destination stream (ignored if buffer is null)
+     * @return the number of encoded bytes.
+     * @throws IOException if an I/O error happened while writing.
+     */
+    private long encode(byte[] buffer, OutputStream out) throws IOException {
+        int limit = (buffer == null ? BufferPool.MAX_BUFFER_SIZE : buffer.length) - 4;
+        int maxSingleByte = encoding == ISO_8859_1 ? 0xff : 0x7f;
+        long total = 0;
+        int pos = 0;
+        int i = 0;
+        int n = text.length();
+
+        while (i < n) {
+            if (pos > limit) {
+                if (buffer != null)
+                    out.write(buffer, 0, pos);
+
+                total += pos;
+                pos = 0;
+            }
+
+            char c = text.charAt(i++);
+
+            if (c <= maxSingleByte) {
+                if (buffer != null)
+                    buffer[pos] = (byte) c;
+
+                pos++;
+                continue;
+            }
+
+            boolean pair = Character.isHighSurrogate(c) && i < n && Character.isLowSurrogate(text.charAt(i));
+
+            if (encoding != UTF_8 || (Character.isSurrogate(c) && !pair)) {
+                // Unmappable character or malformed surrogate: a pair is replaced by a single '?'
+                if (pair)
+                    i++;
+
+                if (buffer != null)
+                    buffer[pos] = '?';
+
+                pos++;
+            } else if (c < 0x800) {
+                if (buffer != null) {
+                    buffer[pos]     = (byte) (0xc0 | (c >> 6));
+                    buffer[pos + 1] = (byte) (0x80 | (c & 0x3f));
+                }
+
+                pos += 2;
+            } else if (pair) {
+                int cp = Character.toCodePoint(c, text.charAt(i++));
+
+                if (buffer != null) {
+                    buffer[pos]     = (byte) (0xf0 | (cp >> 18));
+                    buffer[pos + 1] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    buffer[pos + 2] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    buffer[pos + 3] = (byte) (0x80 | (cp & 0x3f));
+                }
+
+                pos += 4;
+            } else {
+                if (buffer != null) {
+                    buffer[pos]     = (byte) (0xe0 | (c >> 12));
+                    buffer[pos + 1] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    buffer[pos + 2] = (byte) (0x80 | (c & 0x3f));
+                }
+
+                pos += 3;
+            }
+        }
+
+        if (buffer != null && pos > 0)
+            out.write(buffer, 0, pos);
+
+        return total + pos;
+    }
+    // =========================================================================
+}
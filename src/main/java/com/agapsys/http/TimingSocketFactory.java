@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Socket factory which records the time spent opening connections into the {@link RequestTimer} of an execution.
+ * Sockets are created by a wrapped factory.
+ */
+class TimingSocketFactory implements ConnectionSocketFactory {
+    // CLASS SCOPE =============================================================
+    /**
+     * Returns a registry with timing wrappers of default socket factories.
+     * @param socketChannels defines if plain sockets are created from socket channels.
+     * @return a registry with timing wrappers of default socket factories.
+     */
+    static Registry<ConnectionSocketFactory> createDefaultRegistry(boolean socketChannels) {
+        return RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", new TimingSocketFactory(socketChannels ? ChannelSocketFactory.INSTANCE : PlainConnectionSocketFactory.getSocketFactory()))
+            .register("https", new Layered(SSLConnectionSocketFactory.getSocketFactory()))
+            .build();
+    }
+
+    /** Plain socket factory whose sockets have an associated {@linkplain Socket#getChannel() channel}. */
+    private static final class ChannelSocketFactory extends PlainConnectionSocketFactory {
+        private static final ChannelSocketFactory INSTANCE = new ChannelSocketFactory();
+
+        @Override
+        public Socket createSocket(HttpContext context) throws IOException {
+            return SocketChannel.open().socket();
+        }
+    }
+
+    /**
+     * Timing wrapper of a layered socket factory.
+     * TCP connection and TLS handshake are timed separately, so sockets created by wrapped factory must be plain ones.
+     */
+    static final class Layered extends TimingSocketFactory implements LayeredConnectionSocketFactory {
+        private final LayeredConnectionSocketFactory wrappedFactory;
+
+        Layered(LayeredConnectionSocketFactory wrappedFactory) {
+            super(wrappedFactory);
+            this.wrappedFactory = wrappedFactory;
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress, InetSocketAddress localAddress, HttpContext context) throws IOException {
+            RequestTimer timer = RequestTimer.get(context);
+
+            if (timer == null)
+                return wrappedFactory.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+
+            Socket sock = socket != null ? socket : wrappedFactory.createSocket(context);
+
+            if (localAddress != null)
+                sock.bind(localAddress);
+
+            // Connect timeout also bounds the handshake (as done by SSLConnectionSocketFactory)
+            if (connectTimeout > 0 && sock.getSoTimeout() == 0)
+                sock.setSoTimeout(connectTimeout);
+
+            long start = System.nanoTime();
+            try {
+                sock.connect(remoteAddress, connectTimeout);
+            } catch (IOException ex) {
+                try {
+                    sock.close();
+                } catch (IOException ignored) {}
+
+                throw ex;
+            }
+            timer.connected(System.nanoTime() - start);
+
+            return createLayeredSocket(sock, host.getHostName(), remoteAddress.getPort(), context);
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+            RequestTimer timer = RequestTimer.get(context);
+
+            if (timer == null)
+                return wrappedFactory.createLayeredSocket(socket, target, port, context);
+
+            long start = System.nanoTime();
+            Socket layeredSocket = wrappedFactory.createLayeredSocket(socket, target, port, context);
+            timer.secured(System.nanoTime() - start);
+            return layeredSocket;
+        }
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final ConnectionSocketFactory wrappedFactory;
+
+    TimingSocketFactory(ConnectionSocketFactory wrappedFactory) {
+        this.wrappedFactory = wrappedFactory;
+    }
+
+    @Override
+    public Socket createSocket(HttpContext context) throws IOException {
+        return wrappedFactory.createSocket(context);
+    }
+
+    @Override
+    public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress, InetSocketAddress localAddress, HttpContext context) throws IOException {
+        RequestTimer timer = RequestTimer.get(context);
+
+        if (timer == null)
+            return wrappedFactory.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+
+        long start = System.nanoTime();
+        Socket connectedSocket = wrappedFactory.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+        timer.connected(System.nanoTime() - start);
+        return connectedSocket;
+    }
+    // =========================================================================
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runtime state of an {@link UpstreamGroup}: instances with their outstanding requests and passive health.
+ * An instance is outstanding from the moment it is chosen until its response headers are received (or the request fails).
+ */
+final class Upstream {
+    // CLASS SCOPE =============================================================
+    /** Scheme of URIs addressed to a named group. */
+    static final String SCHEME = "upstream";
+
+    /** Minimum share of traffic of an instance in slow start. */
+    private static final double MIN_WEIGHT = 0.1;
+
+    static final class Instance {
+        private final String baseUrl;
+        private final String targetKey;
+
+        private final AtomicInteger outstanding         = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicInteger ejections           = new AtomicInteger();
+
+        private volatile boolean ejected      = false; // True once ejected (instance may be back)
+        private volatile long    ejectedUntil = 0;     // Nano time
+
+        private Instance(String baseUrl) {
+            this.baseUrl = baseUrl;
+            this.targetKey = HttpRequest.getTargetKey(baseUrl);
+        }
+
+        /**
+         * Returns the key identifying this instance (scheme, host and port).
+         * @return the key identifying this instance.
+         */
+        String getTargetKey() {
+            return targetKey;
+        }
+
+        /**
+         * Returns the URI to be requested on this instance.
+         * @param uri request URI (relative or addressed to the group)
+         * @return base URL of this instance followed by the path and query of given URI.
+         */
+        URI resolve(URI uri) {
+            String path = uri.getRawPath();
+            String query = uri.getRawQuery();
+
+            StringBuilder sb = new StringBuilder(baseUrl.length() + (path == null ? 0 : path.length() + 1) + (query == null ? 0 : query.length() + 1));
+            sb.append(baseUrl);
+
+            if (path != null && !path.isEmpty()) {
+                if (path.charAt(0) != '/')
+                    sb.append('/');
+
+                sb.append(path);
+            }
+
+            if (query != null)
+                sb.append('?').append(query);
+
+            return URI.create(sb.toString());
+        }
+
+        private boolean isAvailable(long now) {
+            return !ejected || now - ejectedUntil >= 0;
+        }
+
+        /**
+         * Returns a boolean indicating if this instance may be chosen.
+         * An instance in slow start is a candidate with a probability which grows linearly along the period.
+         */
+        private boolean isCandidate(long now, long slowStartNanos, ThreadLocalRandom random) {
+            if (!ejected)
+                return true;
+
+            long elapsed = now - ejectedUntil;
+
+            if (elapsed < 0)
+                return false;
+
+            return elapsed >= slowStartNanos || random.nextDouble() < Math.max(MIN_WEIGHT, (double) elapsed / slowStartNanos);
+        }
+
+        @Override
+        public String toString() {
+            return baseUrl;
+        }
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final UpstreamGroup group;
+    private final Instance[]    instances;
+    private final long          ejectionNanos;
+    private final long          maxEjectionNanos;
+    private final long          slowStartNanos;
+
+    Upstream(UpstreamGroup group) {
+        this.group = group;
+
+        List<String> baseUrls = group.getBaseUrls();
+        this.instances = new Instance[baseUrls.size()];
+
+        for (int i = 0; i < instances.length; i++) {
+            instances[i] = new Instance(baseUrls.get(i));
+        }
+
+        this.ejectionNanos = TimeUnit.MILLISECONDS.toNanos(group.getEjectionDuration());
+        this.maxEjectionNanos = TimeUnit.MILLISECONDS.toNanos(group.getMaxEjectionDuration());
+        this.slowStartNanos = TimeUnit.MILLISECONDS.toNanos(group.getSlowStartDuration());
+    }
+
+    /**
+     * Returns the settings of this upstream.
+     * @return the settings of this upstream (must not be modified).
+     */
+    UpstreamGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * Chooses an instance for a request.
+     * Each call must be followed by a call to {@link #complete(Instance, boolean)} or {@link #release(Instance)}.
+     * If every instance is ejected, the least loaded one is chosen anyway.
+     * @return chosen instance.
+     */
+    Instance acquire() {
+        long now = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Instance chosen;
+
+        if (instances.length == 1) {
+            chosen = instances[0];
+        } else if (group.getStrategy() == UpstreamGroup.Strategy.POWER_OF_TWO_CHOICES) {
+            chosen = choosePowerOfTwo(now, random);
+        } else {
+            chosen = chooseLeastLoaded(now, random, true);
+        }
+
+        if (chosen == null) // Only instances in slow start left out by chance, or every instance is ejected
+            chosen = chooseLeastLoaded(now, random, false);
+
+        chosen.outstanding.incrementAndGet();
+        return chosen;
+    }
+
+    private Instance chooseLeastLoaded(long now, ThreadLocalRandom random, boolean candidatesOnly) {
+        int start = random.nextInt(instances.length); // Ties are spread among instances
+        Instance best = null;
+        Instance bestAvailable = null;
+
+        for (int i = 0; i < instances.length; i++) {
+            Instance instance = instances[(start + i) % instances.length];
+
+            if (candidatesOnly) {
+                if (instance.isCandidate(now, slowStartNanos, random) && (best == null || instance.outstanding.get() < best.outstanding.get()))
+                    best = instance;
+            } else if (instance.isAvailable(now)) {
+                if (bestAvailable == null || instance.outstanding.get() < bestAvailable.outstanding.get())
+                    bestAvailable = instance;
+            } else if (best == null || instance.outstanding.get() < best.outstanding.get()) {
+                best = instance;
+            }
+        }
+
+        return bestAvailable != null ? bestAvailable : best;
+    }
+
+    private Instance choosePowerOfTwo(long now, ThreadLocalRandom random) {
+        Instance first = sample(now, random, null);
+        if (first == null)
+            return null;
+
+        Instance second = sample(now, random, first);
+        if (second == null)
+            return first;
+
+        return second.outstanding.get() < first.outstanding.get() ? second : first;
+    }
+
+    /**
+     * Returns a random candidate instance.
+     * @param skip instance which must not be returned (may be null).
+     * @return a random candidate or null if no candidate was found.
+     */
+    private Instance sample(long now, ThreadLocalRandom random, Instance skip) {
+        for (int i = 0; i < instances.length; i++) {
+            Instance instance = instances[random.nextInt(instances.length)];
+
+            if (instance != skip && instance.isCandidate(now, slowStartNanos, random))
+                return instance;
+        }
+
+        return null;
+    }
+
+    /**
+     * Completes a request sent to given instance.
+     * @param instance instance returned by {@link #acquire()}
+     * @param failed true if request failed (I/O error or server error).
+     */
+    void complete(Instance instance, boolean failed) {
+        instance.outstanding.decrementAndGet();
+
+        long now = System.nanoTime();
+
+        if (!failed) {
+            instance.consecutiveFailures.set(0);
+            instance.ejections.set(0);
+
+            if (instance.ejected && now - instance.ejectedUntil >= slowStartNanos)
+                instance.ejected = false; // Fully back: slow start is over
+
+            return;
+        }
+
+        if (instance.consecutiveFailures.incrementAndGet() >= group.getFailureThreshold() && instance.isAvailable(now)) {
+            instance.consecutiveFailures.set(0);
+
+            long duration = Math.min(maxEjectionNanos, ejectionNanos * instance.ejections.incrementAndGet());
+            instance.ejectedUntil = now + duration;
+            instance.ejected = true;
+        }
+    }
+
+    /**
+     * Releases given instance without an outcome (e.g. request was aborted).
+     * @param instance instance returned by {@link #acquire()}
+     */
+    void release(Instance instance) {
+        instance.outstanding.decrementAndGet();
+    }
+    // =========================================================================
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Named group of equivalent backend instances used by a {@link HttpClient} (see {@link HttpClient#addUpstream(UpstreamGroup)}).
+ * Requests addressed to the group (relative URIs when the group is the {@linkplain HttpClient#setDefaultUpstream(String) default one},
+ * or URIs like {@code upstream://<name>/path}) are sent to one of its instances, chosen by the configured
+ * {@linkplain Strategy strategy}. Request path and query are appended to the base URL of the chosen instance.
+ * Instances are tracked passively: after a number of consecutive failures (I/O errors or 5xx responses) an instance
+ * is ejected for a period which grows with each ejection, and when it comes back its share of traffic ramps up during
+ * the slow start period.
+ * Settings are read when the group is passed to a client; changing an instance already passed to a client has no
+ * effect on it.
+ */
+public class UpstreamGroup {
+    // CLASS SCOPE =============================================================
+    /** Strategy used to choose an instance for each request. */
+    public enum Strategy {
+        /** Instance with the fewest outstanding requests. */
+        LEAST_OUTSTANDING,
+
+        /** Instance with fewer outstanding requests between two random ones. */
+        POWER_OF_TWO_CHOICES
+    }
+
+    public static final int  DEFAULT_FAILURE_THRESHOLD     = 5;
+    public static final long DEFAULT_EJECTION_DURATION     = 10000;
+    public static final long DEFAULT_MAX_EJECTION_DURATION = 300000;
+    public static final long DEFAULT_SLOW_START_DURATION   = 30000;
+
+    private static String checkBaseUrl(String baseUrl) {
+        if (baseUrl == null || baseUrl.trim().isEmpty())
+            throw new IllegalArgumentException("Null/Empty base URL");
+
+        URI uri;
+        try {
+            uri = URI.create(baseUrl);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid base URL: " + baseUrl, ex);
+        }
+
+        if (uri.getScheme() == null || uri.getHost() == null || uri.getRawQuery() != null || uri.getRawFragment() != null)
+            throw new IllegalArgumentException("Invalid base URL: " + baseUrl);
+
+        return baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final String       name;
+    private final List<String> baseUrls;
+
+    private Strategy strategy            = Strategy.POWER_OF_TWO_CHOICES;
+    private int      failureThreshold    = DEFAULT_FAILURE_THRESHOLD;
+    private long     ejectionDuration    = DEFAULT_EJECTION_DURATION;
+    private long     maxEjectionDuration = DEFAULT_MAX_EJECTION_DURATION;
+    private long     slowStartDuration   = DEFAULT_SLOW_START_DURATION;
+
+    /**
+     * Constructor.
+     * @param name group name
+     * @param baseUrls base URLs of group instances (e.g. "http://10.0.0.1:8080/api")
+     */
+    public UpstreamGroup(String name, String...baseUrls) {
+        if (name == null || name.trim().isEmpty())
+            throw new IllegalArgumentException("Null/Empty name");
+
+        if (baseUrls.length == 0)
+            throw new IllegalArgumentException("Empty base URLs");
+
+        List<String> list = new ArrayList<>(baseUrls.length);
+        for (String baseUrl : baseUrls) {
+            list.add(checkBaseUrl(baseUrl));
+        }
+
+        this.name = name;
+        this.baseUrls = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Copy constructor.
+     * @param other instance to be copied
+     */
+    public UpstreamGroup(UpstreamGroup other) {
+        if (other == null)
+            throw new IllegalArgumentException("Null group");
+
+        this.name                = other.name;
+        this.baseUrls            = other.baseUrls;
+        this.strategy            = other.strategy;
+        this.failureThreshold    = other.failureThreshold;
+        this.ejectionDuration    = other.ejectionDuration;
+        this.maxEjectionDuration = other.maxEjectionDuration;
+        this.slowStartDuration   = other.slowStartDuration;
+    }
+
+    /**
+     * Returns the name of this group.
+     * @return the name of this group.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the base URLs of group instances.
+     * @return an unmodifiable list of base URLs (without trailing slash).
+     */
+    public List<String> getBaseUrls() {
+        return baseUrls;
+    }
+
+    /**
+     * Returns the strategy used to choose an instance.
+     * @return the strategy used to choose an instance.
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Sets the strategy used to choose an instance. Default is {@link Strategy#POWER_OF_TWO_CHOICES}.
+     * @param strategy strategy used to choose an instance.
+     */
+    public void setStrategy(Strategy strategy) {
+        if (strategy == null)
+            throw new IllegalArgumentException("Null strategy");
+
+        this.strategy = strategy;
+    }
+
+    /**
+     * Returns the number of consecutive failures which ejects an instance.
+     * @return the number of consecutive failures which ejects an instance.
+     */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * Sets the number of consecutive failures (I/O errors or 5xx responses) which ejects an instance.
+     * @param failureThreshold number of consecutive failures.
+     */
+    public void setFailureThreshold(int failureThreshold) {
+        if (failureThreshold < 1)
+            throw new IllegalArgumentException("Invalid failure threshold: " + failureThreshold);
+
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Returns the duration (in milliseconds) of the first ejection of an instance.
+     * @return the duration of the first ejection.
+     */
+    public long getEjectionDuration() {
+        return ejectionDuration;
+    }
+
+    /**
+     * Sets the duration of the first ejection of an instance.
+     * Each further ejection (without a success in between) lasts one more time this duration.
+     * @param ejectionDuration duration in milliseconds.
+     */
+    public void setEjectionDuration(long ejectionDuration) {
+        if (ejectionDuration < 0)
+            throw new IllegalArgumentException("Invalid ejection duration: " + ejectionDuration);
+
+        this.ejectionDuration = ejectionDuration;
+    }
+
+    /**
+     * Returns the maximum duration (in milliseconds) of an ejection.
+     * @return the maximum duration of an ejection.
+     */
+    public long getMaxEjectionDuration() {
+        return maxEjectionDuration;
+    }
+
+    /**
+     * Sets the maximum duration of an ejection.
+     * @param maxEjectionDuration duration in milliseconds.
+     */
+    public void setMaxEjectionDuration(long maxEjectionDuration) {
+        if (maxEjectionDuration < 0)
+            throw new IllegalArgumentException("Invalid max ejection duration: " + maxEjectionDuration);
+
+        this.maxEjectionDuration = maxEjectionDuration;
+    }
+
+    /**
+     * Returns the period (in milliseconds) during which the share of traffic of a returning instance ramps up.
+     * @return the slow start period.
+     */
+    public long getSlowStartDuration() {
+        return slowStartDuration;
+    }
+
+    /**
+     * Sets the period during which the share of traffic of a returning instance ramps up.
+     * @param slowStartDuration period in milliseconds (0 disables slow start).
+     */
+    public void setSlowStartDuration(long slowStartDuration) {
+        if (slowStartDuration < 0)
+            throw new IllegalArgumentException("Invalid slow start duration: " + slowStartDuration);
+
+        this.slowStartDuration = slowStartDuration;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s", name, baseUrls);
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled URI template.
+ * Templates are parsed once (see {@link #compile(String)}) and expanded without reparsing. Variables are written
+ * between braces: '{name}' expands to the percent-encoded value (every character except unreserved ones - letters,
+ * digits, '-', '.', '_' and '~' - is encoded as UTF-8, so values are safe in path segments and query components) and
+ * '{+name}' expands to the value keeping reserved characters (e.g. '/', '?', '&amp;') and percent-encoded triplets.
+ * Example: {@code UriTemplate.compile("http://example.com/users/{id}/files?q={query}")}.
+ * Instances are immutable and can be shared by multiple threads.
+ */
+public final class UriTemplate {
+    // CLASS SCOPE =============================================================
+    /** Maximum number of templates cached by {@link #compile(String)}. */
+    private static final int MAX_CACHED_TEMPLATES = 512;
+
+    private static final ConcurrentHashMap<String, UriTemplate> CACHE = new ConcurrentHashMap<>();
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private static final boolean[] UNRESERVED = new boolean[128];
+    private static final boolean[] RESERVED   = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
+        }
+
+        for (char c = 'A'; c <= 'Z'; c++) {
+            UNRESERVED[c] = true;
+        }
+
+        for (char c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+
+        for (char c : "-._~".toCharArray()) {
+            UNRESERVED[c] = true;
+        }
+
+        for (char c : ":/?#[]@!$&'()*+,;=".toCharArray()) {
+            RESERVED[c] = true;
+        }
+    }
+
+    /**
+     * Returns the compiled form of given template.
+     * Compiled templates are cached, so calling this method repeatedly with the same template does not reparse it.
+     * @param template URI template
+     * @return compiled template.
+     */
+    public static UriTemplate compile(String template) {
+        if (template == null)
+            throw new IllegalArgumentException("Null template");
+
+        UriTemplate compiled = CACHE.get(template);
+
+        if (compiled == null) {
+            compiled = new UriTemplate(template);
+
+            if (CACHE.size() < MAX_CACHED_TEMPLATES) {
+                UriTemplate existing = CACHE.putIfAbsent(template, compiled);
+
+                if (existing != null)
+                    compiled = existing;
+            }
+        }
+
+        return compiled;
+    }
+
+    private static boolean isAllowed(char c, boolean reserved) {
+        return c < 128 && (UNRESERVED[c] || (reserved && RESERVED[c]));
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static void appendEncoded(StringBuilder sb, int b) {
+        sb.append('%').append(HEX[(b >> 4) & 0x0f]).append(HEX[b & 0x0f]);
+    }
+
+    /**
+     * Appends given value percent-encoding disallowed characters.
+     * @param sb destination
+     * @param value value to be appended
+     * @param reserved defines if reserved characters and percent-encoded triplets are kept.
+     */
+    static void encode(StringBuilder sb, CharSequence value, boolean reserved) {
+        int length = value.length();
+        int i = 0;
+
+        // Fast path: leading characters which need no encoding are appended in bulk
+        while (i < length && isAllowed(value.charAt(i), reserved)) {
+            i++;
+        }
+        sb.append(value, 0, i);
+
+        while (i < length) {
+            char c = value.charAt(i);
+
+            if (isAllowed(c, reserved)) {
+                sb.append(c);
+                i++;
+            } else if (reserved && c == '%' && i + 2 < length && isHex(value.charAt(i + 1)) && isHex(value.charAt(i + 2))) {
+                sb.append(value, i, i + 3);
+                i += 3;
+            } else {
+                int codePoint = Character.codePointAt(value, i);
+                i += Character.charCount(codePoint);
+
+                if (codePoint < 0x80) {
+                    appendEncoded(sb, codePoint);
+                } else if (codePoint < 0x800) {
+                    appendEncoded(sb, 0xc0 | (codePoint >> 6));
+                    appendEncoded(sb, 0x80 | (codePoint & 0x3f));
+                } else if (codePoint < 0x10000) {
+                    appendEncoded(sb, 0xe0 | (codePoint >> 12));
+                    appendEncoded(sb, 0x80 | ((codePoint >> 6) & 0x3f));
+                    appendEncoded(sb, 0x80 | (codePoint & 0x3f));
+                } else {
+                    appendEncoded(sb, 0xf0 | (codePoint >> 18));
+                    appendEncoded(sb, 0x80 | ((codePoint >> 12) & 0x3f));
+                    appendEncoded(sb, 0x80 | ((codePoint >> 6) & 0x3f));
+                    appendEncoded(sb, 0x80 | (codePoint & 0x3f));
+                }
+            }
+        }
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private final String       template;
+    private final String[]     literals;      // literals[i] precedes expression i; last one follows the last expression
+    private final int[]        variables;     // Index (in names) of the variable of each expression
+    private final boolean[]    reserved;      // Reserved expansion flag of each expression
+    private final List<String> names;
+
+    /** Length of the last expansion, used to size the buffer of next ones. */
+    private volatile int lengthHint;
+
+    private UriTemplate(String template) {
+        List<String> literalList  = new ArrayList<>();
+        List<Integer> variableList = new ArrayList<>();
+        List<Boolean> reservedList = new ArrayList<>();
+        List<String> nameList      = new ArrayList<>();
+
+        int literalLength = 0;
+        int start = 0;
+
+        while (true) {
+            int open = template.indexOf('{', start);
+            int close = template.indexOf('}', start);
+
+            if (open < 0) {
+                if (close >= 0)
+                    throw new IllegalArgumentException("Invalid template (unmatched '}'): " + template);
+
+                break;
+            }
+
+            if (close < open)
+                throw new IllegalArgumentException("Invalid template (unmatched " + (close < 0 ? "'{'" : "'}'") + "): " + template);
+
+            String literal = template.substring(start, open);
+            literalList.add(literal);
+            literalLength += literal.length();
+
+            String expression = template.substring(open + 1, close);
+            boolean reservedExpansion = expression.startsWith("+");
+            String name = reservedExpansion ? expression.substring(1) : expression;
+
+            if (name.isEmpty() || name.indexOf('{') >= 0)
+                throw new IllegalArgumentException("Invalid template (invalid expression '{" + expression + "}'): " + template);
+
+            int variable = nameList.indexOf(name);
+            if (variable < 0) {
+                variable = nameList.size();
+                nameList.add(name);
+            }
+
+            variableList.add(variable);
+            reservedList.add(reservedExpansion);
+            start = close + 1;
+        }
+
+        String lastLiteral = template.substring(start);
+        literalList.add(lastLiteral);
+        literalLength += lastLiteral.length();
+
+        this.template = template;
+        this.literals = literalList.toArray(new String[literalList.size()]);
+        this.variables = new int[variableList.size()];
+        this.reserved = new boolean[reservedList.size()];
+
+        for (int i = 0; i < variables.length; i++) {
+            variables[i] = variableList.get(i);
+            reserved[i] = reservedList.get(i);
+        }
+
+        this.names = Collections.unmodifiableList(nameList);
+        this.lengthHint = literalLength + 16 * variables.length;
+    }
+
+    /**
+     * Returns the template string.
+     * @return the template string.
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Returns the names of template variables.
+     * @return an immutable list of variable names in order of first appearance.
+     */
+    public List<String> getVariableNames() {
+        return names;
+    }
+
+    /**
+     * Expands this template.
+     * @param values variable values in order of first appearance (see {@link #getVariableNames()}). Values are converted with {@link String#valueOf(Object)}.
+     * @return expanded URI.
+     */
+    public String expand(Object...values) {
+        if (values.length != names.size())
+            throw new IllegalArgumentException(String.format("Invalid number of values (expected %d): %d", names.size(), values.length));
+
+        if (variables.length == 0)
+            return template;
+
+        StringBuilder sb = new StringBuilder(lengthHint);
+
+        for (int i = 0; i < variables.length; i++) {
+            sb.append(literals[i]);
+
+            Object value = values[variables[i]];
+            if (value == null)
+                throw new IllegalArgumentException("Null value for variable: " + names.get(variables[i]));
+
+            encode(sb, value instanceof CharSequence ? (CharSequence) value : String.valueOf(value), reserved[i]);
+        }
+
+        sb.append(literals[variables.length]);
+
+        if (sb.length() > lengthHint)
+            lengthHint = sb.length();
+
+        return sb.toString();
+    }
+
+    /**
+     * Expands this template.
+     * @param values variable values by name. Values are converted with {@link String#valueOf(Object)}.
+     * @return expanded URI.
+     */
+    public String expand(Map<String, ?> values) {
+        if (values == null)
+            throw new IllegalArgumentException("Null values");
+
+        Object[] valueArray = new Object[names.size()];
+
+        for (int i = 0; i < valueArray.length; i++) {
+            valueArray[i] = values.get(names.get(i));
+        }
+
+        return expand(valueArray);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof UriTemplate && ((UriTemplate) obj).template.equals(template);
+    }
+
+    @Override
+    public int hashCode() {
+        return template.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+    // =========================================================================
+}
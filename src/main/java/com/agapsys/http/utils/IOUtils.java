@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.agapsys.http.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * I/O helpers which move data using a small, reusable buffer.
+ * Position and limit changes are made through {@link Buffer} because JDK 9+ compilers otherwise link them to
+ * {@link ByteBuffer} overloads which do not exist on Java 7/8.
+ */
+public final class IOUtils {
+    // CLASS SCOPE =============================================================
+    /** Size of transfer buffers. */
+    public static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> TRANSFER_BUFFER = new ThreadLocal<>();
+
+    /**
+     * Borrows the transfer buffer associated with calling thread.
+     * The buffer is detached from the thread while borrowed, so a nested copy (e.g. made by a destination stream)
+     * gets a new buffer instead of overwriting pending bytes.
+     * @return cleared transfer buffer which must be given back through {@link #releaseTransferBuffer(ByteBuffer)}.
+     */
+    private static ByteBuffer borrowTransferBuffer() {
+        ByteBuffer buffer = TRANSFER_BUFFER.get();
+
+        if (buffer == null)
+            return ByteBuffer.allocate(BUFFER_SIZE);
+
+        TRANSFER_BUFFER.set(null);
+        ((Buffer) buffer).clear();
+        return buffer;
+    }
+
+    private static void releaseTransferBuffer(ByteBuffer buffer) {
+        TRANSFER_BUFFER.set(buffer);
+    }
+
+    /**
+     * Copies all bytes from given input stream into given output stream.
+     * Streams are not closed.
+     * @param in source stream
+     * @param out destination stream
+     * @return number of copied bytes
+     * @throws IOException if an I/O error happened
+     */
+    public static long copy(InputStream in, OutputStream out) throws IOException {
+        ByteBuffer transferBuffer = borrowTransferBuffer();
+        byte[] buffer = transferBuffer.array();
+        long total = 0;
+        int read;
+
+        try {
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                total += read;
+            }
+        } finally {
+            releaseTransferBuffer(transferBuffer);
+        }
+
+        return total;
+    }
+
+    /**
+     * Copies all bytes from given input stream into given channel.
+     * Neither the stream nor the channel are closed.
+     * @param in source stream
+     * @param out destination channel
+     * @return number of copied bytes
+     * @throws IOException if an I/O error happened
+     */
+    public static long copy(InputStream in, WritableByteChannel out) throws IOException {
+        if (out instanceof FileChannel)
+            return transferFrom(Channels.newChannel(in), (FileChannel) out);
+
+        ByteBuffer buffer = borrowTransferBuffer();
+        byte[] array = buffer.array();
+        long total = 0;
+        int read;
+
+        try {
+            while ((read = in.read(array)) != -1) {
+                ((Buffer) buffer).limit(read);
+                ((Buffer) buffer).position(0);
+
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+
+                total += read;
+            }
+        } finally {
+            releaseTransferBuffer(buffer);
+        }
+
+        return total;
+    }
+
+    /**
+     * Transfers all bytes from given channel into given file channel starting at its current position.
+     * The file channel position is advanced by the number of transferred bytes.
+     * @param in source channel
+     * @param out destination file channel
+     * @return number of transferred bytes
+     * @throws IOException if an I/O error happened
+     */
+    public static long transferFrom(ReadableByteChannel in, FileChannel out) throws IOException {
+        long start = out.position();
+        long position = start;
+        long transferred;
+
+        while ((transferred = out.transferFrom(in, position, Long.MAX_VALUE - position)) > 0) {
+            position += transferred;
+        }
+
+        out.position(position);
+        return position - start;
+    }
+
+    /**
+     * Returns an input stream which reads the remaining bytes of given buffer.
+     * Reading from returned stream advances the position of given buffer; pass a {@linkplain ByteBuffer#duplicate() duplicate} to keep it untouched.
+     * @param buffer source buffer
+     * @return input stream backed by given buffer.
+     */
+    public static InputStream newInputStream(ByteBuffer buffer) {
+        if (buffer == null)
+            throw new IllegalArgumentException("Null buffer");
+
+        return new ByteBufferInputStream(buffer);
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        private int mark = -1;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+
+            if (!buffer.hasRemaining())
+                return -1;
+
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            ((Buffer) buffer).position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readlimit) {
+            mark = buffer.position();
+        }
+
+        @Override
+        public void reset() throws IOException {
+            if (mark < 0)
+                throw new IOException("Mark not set");
+
+            ((Buffer) buffer).position(mark);
+        }
+    }
+    // =========================================================================
+
+    // INSTANCE SCOPE ==========================================================
+    private IOUtils() {}
+    // =========================================================================
+}
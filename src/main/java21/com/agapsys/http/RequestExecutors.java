@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 Agapsys Tecnologia Ltda-ME.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.agapsys.http;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors used to run blocking requests.
+ * Java 21+ variant: each request runs on its own virtual thread.
+ */
+final class RequestExecutors {
+
+    private RequestExecutors() {}
+
+    /**
+     * Creates an executor which runs each submitted task in its own virtual thread.
+     * @return an executor which runs each submitted task in its own virtual thread.
+     */
+    static ExecutorService newPerRequestExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-client-", 0).factory());
+    }
+
+    /**
+     * Returns a boolean indicating if executors created by this class use virtual threads.
+     * @return a boolean indicating if executors created by this class use virtual threads.
+     */
+    static boolean usesVirtualThreads() {
+        return true;
+    }
+}